@@ -6,12 +6,23 @@ import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.service.FilmExportService;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/films")
@@ -22,10 +33,26 @@ public class FilmController {
     private static final Logger log = LoggerFactory.getLogger(FilmController.class);
     @Autowired
     private final FilmService filmService;
+    private final FilmImportService filmImportService;
+    private final FilmExportService filmExportService;
 
     @GetMapping
-    public Collection<Film> findAll() {
-        return filmService.findAll();
+    public ResponseEntity<Collection<Film>> findAll(@RequestParam(required = false) Long after,
+                                                    @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.findAll());
+        }
+        Page<Film> page = filmService.findPage(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(Page.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public StreamingResponseBody exportFilms() {
+        return filmExportService::exportFilms;
     }
 
     @GetMapping("/{filmId}")
@@ -38,6 +65,17 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping(value = "/bulk", consumes = {"application/x-ndjson", "text/csv"})
+    public ImportReport importFilms(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                    InputStream body) {
+        return filmImportService.importFilms(body, contentType);
+    }
+
+    @PostMapping("/likes/bulk")
+    public ImportReport addLikes(@RequestBody List<Like> likes) {
+        return filmService.addLikes(likes);
+    }
+
     @PutMapping
     public Film update(@RequestBody Film newFilm) {
         return filmService.update(newFilm);
@@ -60,13 +98,13 @@ public class FilmController {
             @RequestParam(defaultValue = "10", required = false) int count) {
         if (year != null && genreId != null) {
             log.info("получены фильмы по обоим");
-            return filmService.findFilmsByYearAndGenre(year, genreId);
+            return filmService.findFilmsByYearAndGenre(year, genreId, count);
         } else if (year != null) {
             log.info("получены фильмы по году");
-            return filmService.findFilmsByYear(year);
+            return filmService.findFilmsByYear(year, count);
         } else if (genreId != null) {
             log.info("получены фильмы по жанру");
-            return filmService.findFilmsByGenre(genreId);
+            return filmService.findFilmsByGenre(genreId, count);
         } else {
             log.info("получены фильмы все");
             return filmService.findTopFilms(count);
@@ -95,6 +133,12 @@ public class FilmController {
         return filmService.findCommonFilms(userId, friendId);
     }
 
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String prefix,
+                                    @RequestParam(defaultValue = "10") int limit) {
+        return filmService.suggest(prefix, limit);
+    }
+
     @GetMapping("/search")
     public Collection<Film> searchFilmsByQuery(
             @RequestParam String query,
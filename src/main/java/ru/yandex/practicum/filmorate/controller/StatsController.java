@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.FeedStats;
+import ru.yandex.practicum.filmorate.model.RecommendationStats;
+import ru.yandex.practicum.filmorate.service.StatsService;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/stats")
+@RequiredArgsConstructor
+public class StatsController {
+    private final StatsService statsService;
+
+    @GetMapping("/cache")
+    public Map<String, CacheStats> getReferenceCacheStats() {
+        return statsService.getReferenceCacheStats();
+    }
+
+    @GetMapping("/recommendations")
+    public RecommendationStats getRecommendationStats() {
+        return statsService.getRecommendationStats();
+    }
+
+    @GetMapping("/feed")
+    public FeedStats getFeedStats() {
+        return statsService.getFeedStats();
+    }
+
+    @GetMapping("/reviews")
+    public CacheStats getReviewCacheStats() {
+        return statsService.getReviewCacheStats();
+    }
+}
@@ -2,11 +2,17 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FeedStreamService;
 import ru.yandex.practicum.filmorate.service.RecommendationsService;
+import ru.yandex.practicum.filmorate.service.TimelineService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.Collection;
@@ -21,6 +27,10 @@ public class UserController {
     private final UserService userService;
     @Autowired
     private final RecommendationsService recommendationsService;
+    @Autowired
+    private final TimelineService timelineService;
+    @Autowired
+    private final FeedStreamService feedStreamService;
 
     @GetMapping("/{userId}")
     public User findUserById(@PathVariable long userId) {
@@ -28,8 +38,17 @@ public class UserController {
     }
 
     @GetMapping
-    public Collection<User> findAll() {
-        return userService.findAll();
+    public ResponseEntity<Collection<User>> findAll(@RequestParam(required = false) Long after,
+                                                    @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.findAll());
+        }
+        Page<User> page = userService.findPage(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(Page.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
     }
 
     @PostMapping
@@ -68,8 +87,22 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<Feed> getFeed(@PathVariable Long id) {
-        return userService.getUserFeed(id);
+    public List<Feed> getFeed(@PathVariable Long id,
+                              @RequestParam(required = false) Long after,
+                              @RequestParam(required = false) Integer limit) {
+        return userService.getUserFeed(id, after, limit);
+    }
+
+    @GetMapping(value = "/{id}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFeed(@PathVariable long id,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return feedStreamService.subscribe(id, lastEventId);
+    }
+
+    @GetMapping("/{id}/timeline")
+    public List<Feed> getTimeline(@PathVariable long id,
+                                  @RequestParam(defaultValue = "50") int limit) {
+        return timelineService.getTimeline(id, limit);
     }
 
     @GetMapping("/{id}/recommendations")
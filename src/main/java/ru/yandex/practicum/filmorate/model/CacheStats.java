@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Счетчики работы кэша.
+ */
+@Data
+@Builder
+public class CacheStats {
+    long hits;
+    long misses;
+    // вытеснения по размеру или времени жизни
+    long evictions;
+    // явные сбросы записей после изменения данных
+    long invalidations;
+    long size;
+    double hitRatio;
+}
@@ -7,7 +7,7 @@ import lombok.Data;
  * Режиссер.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Director {
     Long id;
     String name;
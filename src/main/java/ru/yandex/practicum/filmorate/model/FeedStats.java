@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Показатели очереди отложенной записи событий ленты.
+ */
+@Data
+@Builder
+public class FeedStats {
+    long queueSize;
+    long queueCapacity;
+    long maxQueueSize;
+    long enqueued;
+    long written;
+    long failed;
+    long flushes;
+    long backpressureWaits;
+    long lastFlushSize;
+}
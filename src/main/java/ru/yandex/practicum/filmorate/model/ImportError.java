@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Ошибка в строке пакетной загрузки.
+ */
+@Data
+@AllArgsConstructor
+public class ImportError {
+    long line;
+    String message;
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки: сколько строк обработано, сохранено, пропущено как повторы и отклонено.
+ */
+@Data
+@Builder
+public class ImportReport {
+    long processed;
+    long imported;
+    long skipped;
+    long failed;
+    List<ImportError> errors;
+}
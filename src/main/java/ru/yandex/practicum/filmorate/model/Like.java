@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Лайк пользователя фильму, используется при пакетной загрузке.
+ */
+@Data
+@Builder
+public class Like {
+    Long filmId;
+    Long userId;
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница списка при постраничном чтении по первичному ключу.
+ * nextCursor — id последней записи страницы, если за ней есть еще записи, иначе null.
+ */
+@Data
+@Builder
+public class Page<T> {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    List<T> items;
+    Long nextCursor;
+}
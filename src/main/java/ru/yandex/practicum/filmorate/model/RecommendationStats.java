@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Показатели работы хранилища готовых рекомендаций.
+ */
+@Data
+@Builder
+public class RecommendationStats {
+    long snapshots;
+    long activeUsers;
+    long hits;
+    long misses;
+    long invalidations;
+    long lastServedStalenessMs;
+    long maxServedStalenessMs;
+    long refreshes;
+    long lastRefreshUsers;
+    long lastRefreshDurationMs;
+    long maxRefreshDurationMs;
+}
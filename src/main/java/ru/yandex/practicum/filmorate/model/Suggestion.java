@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+/**
+ * Подсказка при вводе: фильм или режиссер и его вес по числу лайков.
+ */
+@Data
+@Builder
+public class Suggestion {
+    SuggestionType type;
+    Long id;
+    String name;
+    long weight;
+}
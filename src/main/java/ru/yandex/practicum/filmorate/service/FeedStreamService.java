@@ -0,0 +1,173 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.FeedListener;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserStorage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Поток событий ленты пользователя по Server-Sent Events. У каждого подключения своя
+ * ограниченная очередь и виртуальный поток, который отправляет из нее события.
+ * Если клиент не успевает читать и очередь переполняется, подключение закрывается:
+ * клиент переподключается с Last-Event-ID и дочитывает пропущенное из БД.
+ */
+@Slf4j
+@Service
+public class FeedStreamService implements FeedListener {
+    private static final int REPLAY_PAGE_SIZE = 500;
+
+    private final FeedDbStorage feedDbStorage;
+    private final UserStorage userStorage;
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final Map<Long, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    public FeedStreamService(FeedDbStorage feedDbStorage,
+                             @Qualifier("userDbStorage") UserStorage userStorage,
+                             @Value("${filmorate.feed.stream.buffer-size:256}") int bufferSize,
+                             @Value("${filmorate.feed.stream.timeout-ms:1800000}") long timeoutMs) {
+        this.feedDbStorage = feedDbStorage;
+        this.userStorage = userStorage;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Открывает поток событий пользователя. Если передан lastEventId, сначала отправляются
+     * все события после него из БД, затем новые по мере записи.
+     */
+    public SseEmitter subscribe(long userId, Long lastEventId) {
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь с id = " + userId + " не найден");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscription subscription = new Subscription(userId, emitter, new ArrayBlockingQueue<>(bufferSize));
+        // подписка регистрируется до чтения истории, дубли отсекаются по id события
+        subscriptions.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscription);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(error -> unsubscribe(subscription));
+        subscription.thread = Thread.ofVirtual()
+                .name("feed-stream-" + userId)
+                .start(() -> stream(subscription, lastEventId));
+        // подписку могли закрыть до присвоения потока, тогда unsubscribe не смог его прервать
+        if (!isSubscribed(subscription)) {
+            subscription.thread.interrupt();
+        }
+        log.info("Открыт поток ленты пользователя {} с события {}", userId, lastEventId);
+        return emitter;
+    }
+
+    @Override
+    public void onFeedsWritten(List<Feed> feeds) {
+        for (Feed feed : feeds) {
+            Set<Subscription> userSubscriptions = subscriptions.get(feed.getUserId());
+            if (userSubscriptions == null) {
+                continue;
+            }
+            for (Subscription subscription : userSubscriptions) {
+                if (!subscription.queue.offer(feed)) {
+                    log.warn("Клиент ленты пользователя {} не успевает читать, поток закрыт", feed.getUserId());
+                    unsubscribe(subscription);
+                    subscription.emitter.complete();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        subscriptions.values().forEach(userSubscriptions -> userSubscriptions.forEach(subscription -> {
+            if (subscription.thread != null) {
+                subscription.thread.interrupt();
+            }
+            subscription.emitter.complete();
+        }));
+        subscriptions.clear();
+    }
+
+    private void stream(Subscription subscription, Long lastEventId) {
+        try {
+            if (lastEventId != null) {
+                replay(subscription, lastEventId);
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                send(subscription, subscription.queue.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Поток ленты пользователя {} закрыт клиентом", subscription.userId);
+            unsubscribe(subscription);
+            subscription.emitter.completeWithError(e);
+        }
+    }
+
+    private void replay(Subscription subscription, long lastEventId) throws IOException {
+        List<Feed> page;
+        do {
+            page = feedDbStorage.getFeedByUser(subscription.userId, subscription.lastSentId == 0
+                    ? lastEventId : subscription.lastSentId, REPLAY_PAGE_SIZE);
+            for (Feed feed : page) {
+                send(subscription, feed);
+            }
+        } while (page.size() == REPLAY_PAGE_SIZE);
+    }
+
+    private void send(Subscription subscription, Feed feed) throws IOException {
+        if (feed.getEventId() <= subscription.lastSentId) {
+            return;
+        }
+        subscription.emitter.send(SseEmitter.event()
+                .id(String.valueOf(feed.getEventId()))
+                .name("feed")
+                .data(feed, MediaType.APPLICATION_JSON));
+        subscription.lastSentId = feed.getEventId();
+    }
+
+    private boolean isSubscribed(Subscription subscription) {
+        Set<Subscription> userSubscriptions = subscriptions.get(subscription.userId);
+        return userSubscriptions != null && userSubscriptions.contains(subscription);
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        Set<Subscription> userSubscriptions = subscriptions.get(subscription.userId);
+        if (userSubscriptions != null && userSubscriptions.remove(subscription)) {
+            subscriptions.computeIfPresent(subscription.userId, (id, set) -> set.isEmpty() ? null : set);
+            if (subscription.thread != null) {
+                subscription.thread.interrupt();
+            }
+            log.info("Закрыт поток ленты пользователя {}", subscription.userId);
+        }
+    }
+
+    private static class Subscription {
+        private final long userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Feed> queue;
+        private volatile Thread thread;
+        private long lastSentId;
+
+        private Subscription(long userId, SseEmitter emitter, BlockingQueue<Feed> queue) {
+            this.userId = userId;
+            this.emitter = emitter;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Выгрузка каталога в NDJSON (один фильм в строке) прямо в поток ответа.
+ * Фильмы читаются курсором и пишутся пачками, поэтому расход памяти не зависит от размера каталога.
+ */
+@Slf4j
+@Service
+public class FilmExportService {
+    private static final byte NEW_LINE = '\n';
+
+    private final FilmStorage filmStorage;
+    private final ObjectMapper objectMapper;
+
+    public FilmExportService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                             ObjectMapper objectMapper) {
+        this.filmStorage = filmStorage;
+        this.objectMapper = objectMapper;
+    }
+
+    public void exportFilms(OutputStream out) throws IOException {
+        long[] exported = {0};
+        try {
+            filmStorage.exportAll(films -> {
+                try {
+                    for (Film film : films) {
+                        out.write(objectMapper.writeValueAsBytes(film));
+                        out.write(NEW_LINE);
+                    }
+                    out.flush();
+                    exported[0] += films.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            log.warn("Выгрузка фильмов прервана после {} фильмов", exported[0]);
+            throw e.getCause();
+        }
+        log.info("Выгружено фильмов: {}", exported[0]);
+    }
+}
@@ -0,0 +1,253 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Пакетная загрузка каталога из NDJSON (один фильм в строке) или CSV с заголовком
+ * name,description,releaseDate,duration,mpa,genres,directors (id жанров и режиссеров через ';').
+ * Поток читается построчно, в памяти держится только текущая пачка фильмов.
+ */
+@Slf4j
+@Service
+public class FilmImportService {
+    private static final String MPA_ERR = "Рейтинг MPA должен быть указан";
+    private static final String CSV_HEADER_ERR = "В CSV отсутствует заголовок";
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final DirectoryStorage directoryStorage;
+    private final DirectorStorage directorStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    public FilmImportService(FilmService filmService,
+                             @Qualifier("filmDbStorage") FilmStorage filmStorage,
+                             DirectoryStorage directoryStorage,
+                             DirectorStorage directorStorage,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             @Value("${filmorate.import.batch-size:1000}") int batchSize) {
+        this.filmService = filmService;
+        this.filmStorage = filmStorage;
+        this.directoryStorage = directoryStorage;
+        this.directorStorage = directorStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    public ImportReport importFilms(InputStream body, String contentType) {
+        boolean csv = contentType != null && contentType.toLowerCase(Locale.ROOT).contains("csv");
+        ImportState state = new ImportState();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Map<String, Integer> csvColumns = null;
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (csv && csvColumns == null) {
+                    csvColumns = parseCsvHeader(line);
+                    continue;
+                }
+                state.processed++;
+                try {
+                    Film film = csv ? parseCsvFilm(line, csvColumns) : objectMapper.readValue(line, Film.class);
+                    validate(film);
+                    state.chunk.add(film);
+                    state.chunkLines.add(lineNumber);
+                } catch (ValidationException | NotFoundException e) {
+                    state.reject(lineNumber, e.getMessage());
+                } catch (IOException | RuntimeException e) {
+                    state.reject(lineNumber, "Не удалось разобрать строку: " + e.getMessage());
+                }
+                if (state.chunk.size() >= batchSize) {
+                    flush(state);
+                }
+            }
+            if (csv && csvColumns == null) {
+                throw new ValidationException(CSV_HEADER_ERR);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flush(state);
+        log.info("Загрузка фильмов завершена: обработано {}, сохранено {}, отклонено {}",
+                state.processed, state.imported, state.errors.size());
+        return ImportReport.builder()
+                .processed(state.processed)
+                .imported(state.imported)
+                .failed(state.errors.size())
+                .errors(state.errors)
+                .build();
+    }
+
+    private void validate(Film film) {
+        filmService.validate(film);
+        if (film.getMpa() == null) {
+            throw new ValidationException(MPA_ERR);
+        }
+        // справочники проверяются по кэшу, чтобы ошибка попала в отчет по строке, а не сорвала пачку
+        directoryStorage.findMpaById(film.getMpa().getId());
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> directoryStorage.findGenreById(genre.getId()));
+        }
+        if (film.getDirectors() != null) {
+            film.getDirectors().forEach(director -> directorStorage.findDirectorById(director.getId()));
+        }
+    }
+
+    /**
+     * Сохраняет текущую пачку в отдельной транзакции. Если пачка не сохранилась,
+     * все ее строки попадают в отчет, а загрузка продолжается со следующей пачки.
+     */
+    private void flush(ImportState state) {
+        if (state.chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> filmStorage.createAll(state.chunk));
+            state.imported += state.chunk.size();
+        } catch (DataAccessException e) {
+            log.error("Не удалось сохранить пачку фильмов", e);
+            for (Long line : state.chunkLines) {
+                state.reject(line, "Не удалось сохранить пачку: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        state.chunk = new ArrayList<>();
+        state.chunkLines = new ArrayList<>();
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String line) {
+        List<String> names = splitCsvLine(line);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        return columns;
+    }
+
+    private static Film parseCsvFilm(String line, Map<String, Integer> columns) {
+        List<String> values = splitCsvLine(line);
+        String duration = csvValue(values, columns, "duration");
+        String releaseDate = csvValue(values, columns, "releasedate");
+        String mpa = csvValue(values, columns, "mpa");
+        Set<Genre> genres = new HashSet<>();
+        for (Long id : parseIds(csvValue(values, columns, "genres"))) {
+            genres.add(Genre.builder().id(id).build());
+        }
+        Set<Director> directors = new HashSet<>();
+        for (Long id : parseIds(csvValue(values, columns, "directors"))) {
+            directors.add(Director.builder().id(id).build());
+        }
+        return Film.builder()
+                .name(csvValue(values, columns, "name"))
+                .description(csvValue(values, columns, "description"))
+                .releaseDate(releaseDate == null ? null : LocalDate.parse(releaseDate))
+                .duration(duration == null ? null : Integer.valueOf(duration))
+                .mpa(mpa == null ? null : Mpa.builder().id(Long.valueOf(mpa)).build())
+                .genres(genres)
+                .directors(directors)
+                .build();
+    }
+
+    private static String csvValue(List<String> values, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= values.size() || values.get(index).isBlank()) {
+            return null;
+        }
+        return values.get(index).trim();
+    }
+
+    private static List<Long> parseIds(String value) {
+        List<Long> ids = new ArrayList<>();
+        if (value != null) {
+            for (String id : value.split(";")) {
+                if (!id.isBlank()) {
+                    ids.add(Long.valueOf(id.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Разбор строки CSV: поля через запятую, поле в кавычках может содержать запятые,
+     * кавычка внутри такого поля удваивается.
+     */
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static class ImportState {
+        private long processed;
+        private long imported;
+        private final List<ImportError> errors = new ArrayList<>();
+        private List<Film> chunk = new ArrayList<>();
+        private List<Long> chunkLines = new ArrayList<>();
+
+        private void reject(long line, String message) {
+            errors.add(new ImportError(line, message));
+        }
+    }
+}
@@ -7,13 +7,24 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Page;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewCache;
 import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.search.FilmSuggestIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -25,22 +36,54 @@ public class FilmService {
     private static final String REL_DATE_ERR = "Дата релиза — не раньше 28 декабря 1895 года";
     private static final String DURATION_ERR = "Продолжительность фильма должна быть положительным числом";
     private static final String ID_ERR = "Id должен быть указан";
+    private static final String LIKE_IDS_ERR = "Должны быть указаны filmId и userId";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String PAGE_LIMIT_ERR = "Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE;
+    private static final String SUGGEST_PREFIX_ERR = "Префикс подсказки не может быть пустым";
+    private static final String SUGGEST_LIMIT_ERR = "Число подсказок должно быть от 1 до " + FilmSuggestIndex.MAX_LIMIT;
 
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final DirectoryStorage directoryStorage;
+    private final FilmSuggestIndex suggestIndex;
+    private final ReviewCache reviewCache;
 
     public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage, DirectoryStorage directoryStorage) {
+                       @Qualifier("userDbStorage") UserStorage userStorage, DirectoryStorage directoryStorage,
+                       FilmSuggestIndex suggestIndex, ReviewCache reviewCache) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.directoryStorage = directoryStorage;
+        this.suggestIndex = suggestIndex;
+        this.reviewCache = reviewCache;
     }
 
     public Collection<Film> findAll() {
         return filmStorage.findAll();
     }
 
+    /**
+     * Страница фильмов по возрастанию id, начиная после after.
+     */
+    public Page<Film> findPage(Long after, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            log.error(PAGE_LIMIT_ERR);
+            throw new ValidationException(PAGE_LIMIT_ERR);
+        }
+        // читаем на один фильм больше, чтобы узнать, есть ли следующая страница
+        List<Film> films = filmStorage.findPage(after == null ? 0 : after, pageSize + 1);
+        if (films.size() <= pageSize) {
+            return Page.<Film>builder().items(films).build();
+        }
+        List<Film> items = films.subList(0, pageSize);
+        return Page.<Film>builder()
+                .items(items)
+                .nextCursor(items.get(pageSize - 1).getId())
+                .build();
+    }
+
     public Film findFilmById(Long filmId) {
         return filmStorage.findFilmById(filmId);
     }
@@ -49,16 +92,25 @@ public class FilmService {
         // проверяем выполнение необходимых условий
         log.trace("Начинаем создавать фильм");
         log.trace(film.toString());
+        validate(film);
+        log.trace("Проверки пройдены");
 
+        return filmStorage.create(film);
+    }
+
+    /**
+     * Общие правила для создания, обновления и пакетного импорта фильмов.
+     */
+    public void validate(Film film) {
         if (film.getName() == null || film.getName().isBlank()) {
             log.error(EMPTY_NAME_ERR);
             throw new ValidationException(EMPTY_NAME_ERR);
         }
-        if (film.getDescription().length() > 200) {
+        if (film.getDescription() != null && film.getDescription().length() > 200) {
             log.error(LONG_DESC_ERR);
             throw new ValidationException(LONG_DESC_ERR);
         }
-        if (film.getReleaseDate().isBefore(LocalDate.parse("1895-12-28"))) {
+        if (film.getReleaseDate() == null || film.getReleaseDate().isBefore(LocalDate.parse("1895-12-28"))) {
             log.error(REL_DATE_ERR);
             throw new ValidationException(REL_DATE_ERR);
         }
@@ -66,15 +118,6 @@ public class FilmService {
             log.error(DURATION_ERR);
             throw new ValidationException(DURATION_ERR);
         }
-
-        if (film.getName() == null || film.getName().isBlank()) {
-            log.error(EMPTY_NAME_ERR);
-            throw new ValidationException(EMPTY_NAME_ERR);
-        }
-
-        log.trace("Проверки пройдены");
-
-        return filmStorage.create(film);
     }
 
     public Film update(Film newFilm) {
@@ -86,26 +129,11 @@ public class FilmService {
             log.error(ID_ERR);
             throw new ValidationException(ID_ERR);
         }
-        if (newFilm.getName() == null || newFilm.getName().isBlank()) {
-            log.error(EMPTY_NAME_ERR);
-            throw new ValidationException(EMPTY_NAME_ERR);
-        }
-        if (newFilm.getDescription().length() > 200) {
-            log.error(LONG_DESC_ERR);
-            throw new ValidationException(LONG_DESC_ERR);
-        }
-        if (newFilm.getReleaseDate().isBefore(LocalDate.parse("1895-12-28"))) {
-            log.error(REL_DATE_ERR);
-            throw new ValidationException(REL_DATE_ERR);
-        }
-        if (newFilm.getDuration() == null || newFilm.getDuration() < 0) {
-            log.error(DURATION_ERR);
-            throw new ValidationException(DURATION_ERR);
-        }
+        validate(newFilm);
         log.trace("Проверки пройдены");
 
-        if (findAll().stream().collect(Collectors.toMap(Film::getId, f -> f)).containsKey(newFilm.getId())) {
-          return filmStorage.update(newFilm);
+        if (filmStorage.existsById(newFilm.getId())) {
+            return filmStorage.update(newFilm);
         } else {
             log.error("Фильм с id = {} не найден", newFilm.getId());
             throw new NotFoundException("Фильм с id = " + newFilm.getId() + " не найден");
@@ -116,20 +144,52 @@ public class FilmService {
         filmStorage.addLike(filmId, userId);
     }
 
+    /**
+     * Пакетное добавление лайков. Фильмы и пользователи проверяются двумя запросами на весь набор,
+     * повторы внутри набора и уже поставленные лайки пропускаются.
+     */
+    public ImportReport addLikes(List<Like> likes) {
+        List<ImportError> errors = new ArrayList<>();
+        Set<Long> filmIds = filmStorage.findExistingFilmIds(likes.stream()
+                .map(Like::getFilmId).filter(Objects::nonNull).collect(Collectors.toSet()));
+        Set<Long> userIds = userStorage.findExistingUserIds(likes.stream()
+                .map(Like::getUserId).filter(Objects::nonNull).collect(Collectors.toSet()));
+        Set<Like> validLikes = new LinkedHashSet<>();
+        for (int i = 0; i < likes.size(); i++) {
+            Like like = likes.get(i);
+            if (like.getFilmId() == null || like.getUserId() == null) {
+                errors.add(new ImportError(i + 1, LIKE_IDS_ERR));
+            } else if (!filmIds.contains(like.getFilmId())) {
+                errors.add(new ImportError(i + 1, "Фильм с id = " + like.getFilmId() + " не найден"));
+            } else if (!userIds.contains(like.getUserId())) {
+                errors.add(new ImportError(i + 1, "Пользователь с id = " + like.getUserId() + " не найден"));
+            } else {
+                validLikes.add(like);
+            }
+        }
+        List<Like> added = filmStorage.addLikes(new ArrayList<>(validLikes));
+        log.info("Пакетная загрузка лайков: получено {}, добавлено {}, отклонено {}",
+                likes.size(), added.size(), errors.size());
+        return ImportReport.builder()
+                .processed(likes.size())
+                .imported(added.size())
+                .skipped(likes.size() - added.size() - errors.size())
+                .failed(errors.size())
+                .errors(errors)
+                .build();
+    }
+
     public void removeLike(long filmId, long userId) {
         filmStorage.removeLike(filmId, userId);
     }
 
     public Collection<Film> findTopFilms(long count) {
-        Collection<Film> allFilms = filmStorage.findAll();
-        return allFilms.stream()
-                .sorted((f1, f2) -> Integer.compare(f2.getLikes().size(), f1.getLikes().size()))
-                .limit(count)
-                .collect(Collectors.toList());
+        return filmStorage.findTopFilms(count);
     }
 
     public void deleteFilm(long id) {
         filmStorage.deleteFilm(id);
+        reviewCache.invalidate(id);
     }
 
     public Collection<Film> findFilmsByDirectorId(long directorId, String sortBy) {
@@ -154,25 +214,31 @@ public List<Film> findCommonFilms(long userId, long friendId) {
     return commonFilms;
 }
 
-    public Collection<Film> findFilmsByYear(int year) {
-        return sortByLikes(filmStorage.findFilmsByYear(year));
-    }
-
-    public Collection<Film> findFilmsByGenre(long genreId) {
-        return sortByLikes(filmStorage.findFilmsByGenre(genreId));
+    public Collection<Film> findFilmsByYear(int year, long count) {
+        return filmStorage.findFilmsByYear(year, count);
     }
 
-    public Collection<Film> findFilmsByYearAndGenre(Integer year, long genreId) {
-        return sortByLikes(filmStorage.findFilmsByGenreAndYear(genreId, year));
+    public Collection<Film> findFilmsByGenre(long genreId, long count) {
+        return filmStorage.findFilmsByGenre(genreId, count);
     }
 
-    private Collection<Film> sortByLikes(Collection<Film> films) {
-        return films.stream()
-                .sorted((f1, f2) -> f2.getLikes().size() - f1.getLikes().size())
-                .collect(Collectors.toList());
+    public Collection<Film> findFilmsByYearAndGenre(Integer year, long genreId, long count) {
+        return filmStorage.findFilmsByGenreAndYear(genreId, year, count);
     }
 
 public Collection<Film> searchFilmsByQuery(String query, String by) {
     return filmStorage.searchFilmsByQuery(query, by);
     }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        if (prefix == null || prefix.isBlank()) {
+            log.error(SUGGEST_PREFIX_ERR);
+            throw new ValidationException(SUGGEST_PREFIX_ERR);
+        }
+        if (limit <= 0 || limit > FilmSuggestIndex.MAX_LIMIT) {
+            log.error(SUGGEST_LIMIT_ERR);
+            throw new ValidationException(SUGGEST_LIMIT_ERR);
+        }
+        return suggestIndex.suggest(prefix, limit);
+    }
 }
@@ -6,6 +6,7 @@ import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewCache;
 
 import java.util.List;
 
@@ -14,15 +15,19 @@ import java.util.List;
 public class ReviewService {
 
     private final ReviewDbStorage storage;
+    private final ReviewCache reviewCache;
 
-    public ReviewService(ReviewDbStorage storage) {
+    public ReviewService(ReviewDbStorage storage, ReviewCache reviewCache) {
         this.storage = storage;
+        this.reviewCache = reviewCache;
     }
 
     public Review addReview(Review review) {
         check(review);
         try {
-            return storage.addReview(review);
+            Review created = storage.addReview(review);
+            reviewCache.invalidate(created.getFilmId());
+            return created;
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при добавлении. " + e.getMessage());
         }
@@ -31,7 +36,9 @@ public class ReviewService {
     public Review updateReview(Review review) {
         check(review);
         try {
-            return storage.updateReview(review);
+            Review updated = storage.updateReview(review);
+            reviewCache.invalidate(updated.getFilmId());
+            return updated;
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при обновлении. " + e.getMessage());
         }
@@ -42,7 +49,7 @@ public class ReviewService {
             throw new ValidationException("Invalid review ID: " + id);
         }
         try {
-            storage.deleteReview(id);
+            reviewCache.invalidate(storage.deleteReview(id).getFilmId());
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при удалении. " + e.getMessage());
         }
@@ -57,7 +64,7 @@ public class ReviewService {
             throw new ValidationException("Invalid review ID: " + filmId);
         }
         try {
-            return storage.getReviewByFilm(filmId, count);
+            return reviewCache.get(filmId, count, limit -> storage.getReviewByFilm(filmId, limit));
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при получении отзывов о фильме. " + e.getMessage());
         }
@@ -74,7 +81,7 @@ public class ReviewService {
     public void likeToReview(Long reviewId, Long userId) {
         checkId(reviewId, userId);
         try {
-            storage.likeOrDislikeToReview(reviewId, userId, true);
+            reviewCache.invalidate(storage.likeOrDislikeToReview(reviewId, userId, true));
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при добавлении лайка отзыву. " + e.getMessage());
         }
@@ -83,7 +90,7 @@ public class ReviewService {
     public void dislikeToReview(Long reviewId, Long userId) {
         checkId(reviewId, userId);
         try {
-            storage.likeOrDislikeToReview(reviewId, userId, false);
+            reviewCache.invalidate(storage.likeOrDislikeToReview(reviewId, userId, false));
         } catch (Exception e) {
             throw new RuntimeException("Ошибка при добавлении дизлайка к отзыву. " + e.getMessage());
         }
@@ -91,12 +98,12 @@ public class ReviewService {
 
     public void deleteLike(Long reviewId, Long userId) {
         checkId(reviewId, userId);
-        storage.deleteLikeOrDislike(reviewId, userId, true);
+        reviewCache.invalidate(storage.deleteLikeOrDislike(reviewId, userId, true));
     }
 
     public void deleteDislike(Long reviewId, Long userId) {
         checkId(reviewId, userId);
-        storage.deleteLikeOrDislike(reviewId, userId, false);
+        reviewCache.invalidate(storage.deleteLikeOrDislike(reviewId, userId, false));
     }
 
     private void check(Review review) {
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.FeedStats;
+import ru.yandex.practicum.filmorate.model.RecommendationStats;
+import ru.yandex.practicum.filmorate.service.recommendation.RecommendationSnapshotStore;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewCache;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class StatsService {
+    private final DirectoryStorage directoryStorage;
+    private final DirectorStorage directorStorage;
+    private final RecommendationSnapshotStore recommendationSnapshotStore;
+    private final FeedDbStorage feedDbStorage;
+    private final ReviewCache reviewCache;
+
+    public Map<String, CacheStats> getReferenceCacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("genres", directoryStorage.getGenreCacheStats());
+        stats.put("mpa", directoryStorage.getMpaCacheStats());
+        stats.put("directors", directorStorage.getCacheStats());
+        return stats;
+    }
+
+    public RecommendationStats getRecommendationStats() {
+        return recommendationSnapshotStore.getStats();
+    }
+
+    public FeedStats getFeedStats() {
+        return feedDbStorage.getStats();
+    }
+
+    public CacheStats getReviewCacheStats() {
+        return reviewCache.getStats();
+    }
+}
@@ -0,0 +1,186 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.FeedListener;
+import ru.yandex.practicum.filmorate.storage.friends.FriendshipIndex;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserStorage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Лента действий друзей с разветвлением при записи: id каждого нового события
+ * добавляются в кольцевые буферы пользователей, у которых автор события в друзьях.
+ * Буферы заводятся только для тех, кто читал ленту, и строятся из FEED при первом чтении.
+ * Число буферов ограничено, при превышении удаляются давно не читавшие пользователи.
+ */
+@Slf4j
+@Service
+public class TimelineService implements FeedListener {
+    private static final String LIMIT_ERR = "Размер ленты должен быть положительным числом";
+
+    private final FeedDbStorage feedDbStorage;
+    private final FriendshipIndex friendshipIndex;
+    private final UserStorage userStorage;
+    private final int capacity;
+    private final int maxUsers;
+    private final Map<Long, TimelineBuffer> buffers = new ConcurrentHashMap<>();
+
+    public TimelineService(FeedDbStorage feedDbStorage,
+                           FriendshipIndex friendshipIndex,
+                           @Qualifier("userDbStorage") UserStorage userStorage,
+                           @Value("${filmorate.timeline.capacity:200}") int capacity,
+                           @Value("${filmorate.timeline.max-users:10000}") int maxUsers) {
+        // кольцевой буфер нулевого размера делил бы на ноль при первом событии
+        if (capacity < 1) {
+            throw new IllegalArgumentException("filmorate.timeline.capacity должен быть не меньше 1, задано "
+                    + capacity);
+        }
+        if (maxUsers < 1) {
+            throw new IllegalArgumentException("filmorate.timeline.max-users должен быть не меньше 1, задано "
+                    + maxUsers);
+        }
+        this.feedDbStorage = feedDbStorage;
+        this.friendshipIndex = friendshipIndex;
+        this.userStorage = userStorage;
+        this.capacity = capacity;
+        this.maxUsers = maxUsers;
+    }
+
+    @Override
+    public void onFeedsWritten(List<Feed> feeds) {
+        for (Feed feed : feeds) {
+            for (long followerId : friendshipIndex.getFollowers(feed.getUserId())) {
+                TimelineBuffer buffer = buffers.get(followerId);
+                if (buffer != null) {
+                    buffer.add(feed.getEventId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Последние события друзей пользователя, сначала новые.
+     */
+    public List<Feed> getTimeline(long userId, int limit) {
+        if (limit <= 0) {
+            log.error(LIMIT_ERR);
+            throw new ValidationException(LIMIT_ERR);
+        }
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь с id = " + userId + " не найден");
+        }
+        long[] friends = friendshipIndex.getFriends(userId);
+        TimelineBuffer buffer = buffers.get(userId);
+        // массив друзей в индексе заменяется при каждом изменении, поэтому сравнения ссылок достаточно
+        if (buffer == null || buffer.friends != friends) {
+            buffer = rebuild(userId, friends);
+        }
+        buffer.lastAccess = System.nanoTime();
+
+        List<Long> ids = new ArrayList<>();
+        for (long id : buffer.newestFirst(Math.min(limit, capacity))) {
+            ids.add(id);
+        }
+        List<Feed> feeds = new ArrayList<>(feedDbStorage.findFeedsByIds(ids));
+        // событие могло попасть в буфер до удаления автора из друзей
+        feeds.removeIf(feed -> Arrays.binarySearch(friends, feed.getUserId()) < 0);
+        feeds.sort(Comparator.comparing(Feed::getEventId).reversed());
+        return feeds;
+    }
+
+    private TimelineBuffer rebuild(long userId, long[] friends) {
+        // буфер публикуется до чтения из БД, чтобы не потерять события, записанные во время построения
+        TimelineBuffer buffer = new TimelineBuffer(capacity, friends);
+        buffers.put(userId, buffer);
+        evictInactive();
+        List<Long> friendIds = Arrays.stream(friends).boxed().toList();
+        buffer.addAll(feedDbStorage.findLastFeedIdsByUsers(friendIds, capacity));
+        log.debug("Лента друзей пользователя {} построена из БД", userId);
+        return buffer;
+    }
+
+    private void evictInactive() {
+        int excess = buffers.size() - maxUsers;
+        if (excess <= 0) {
+            return;
+        }
+        // удаляем с запасом, чтобы не сортировать буферы при каждом новом читателе
+        int toEvict = excess + maxUsers / 10;
+        buffers.entrySet().stream()
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                .limit(toEvict)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(buffers::remove);
+        log.debug("Из ленты друзей вытеснено {} неактивных пользователей", toEvict);
+    }
+
+    /**
+     * Кольцевой буфер id событий по возрастанию. Новые id обычно больше последнего и просто
+     * дописываются поверх самого старого; при слиянии с данными из БД буфер пересобирается.
+     */
+    private static class TimelineBuffer {
+        private final long[] ids;
+        private final long[] friends;
+        private volatile long lastAccess = System.nanoTime();
+        private int start;
+        private int size;
+
+        private TimelineBuffer(int capacity, long[] friends) {
+            this.ids = new long[capacity];
+            this.friends = friends;
+        }
+
+        private synchronized void add(long id) {
+            if (size > 0 && id <= ids[(start + size - 1) % ids.length]) {
+                merge(new long[]{id});
+                return;
+            }
+            if (size < ids.length) {
+                ids[(start + size) % ids.length] = id;
+                size++;
+            } else {
+                ids[start] = id;
+                start = (start + 1) % ids.length;
+            }
+        }
+
+        private synchronized void addAll(List<Long> sortedIds) {
+            merge(sortedIds.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        private synchronized long[] newestFirst(int limit) {
+            int count = Math.min(limit, size);
+            long[] result = new long[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = ids[(start + size - 1 - i) % ids.length];
+            }
+            return result;
+        }
+
+        private void merge(long[] extra) {
+            long[] all = new long[size + extra.length];
+            for (int i = 0; i < size; i++) {
+                all[i] = ids[(start + i) % ids.length];
+            }
+            System.arraycopy(extra, 0, all, size, extra.length);
+            long[] merged = Arrays.stream(all).sorted().distinct().toArray();
+            int from = Math.max(0, merged.length - ids.length);
+            size = merged.length - from;
+            start = 0;
+            System.arraycopy(merged, from, ids, 0, size);
+        }
+    }
+}
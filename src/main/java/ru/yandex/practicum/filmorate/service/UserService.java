@@ -2,20 +2,22 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewCache;
+import ru.yandex.practicum.filmorate.storage.friends.FriendshipIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserStorage;
 
 import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -25,19 +27,51 @@ public class UserService {
     private static final String BIRTHDAY_ERR = "Дата рождения не может быть в будущем";
     private static final String DUPL_EMAIL_ERR = "Этот имейл уже используется";
     private static final String ID_ERR = "Id должен быть указан";
+    private static final int DEFAULT_FEED_PAGE_SIZE = 100;
+    private static final int MAX_FEED_PAGE_SIZE = 1000;
+    private static final String FEED_LIMIT_ERR = "Размер страницы ленты должен быть от 1 до " + MAX_FEED_PAGE_SIZE;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String PAGE_LIMIT_ERR = "Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE;
 
     private final UserStorage userStorage;
     private final FeedDbStorage feedDbStorage;
+    private final ReviewCache reviewCache;
+    private final FriendshipIndex friendshipIndex;
 
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage, FeedDbStorage feedDbStorage) {
+    public UserService(@Qualifier("userDbStorage") UserStorage userStorage, FeedDbStorage feedDbStorage,
+                       ReviewCache reviewCache, FriendshipIndex friendshipIndex) {
         this.userStorage = userStorage;
         this.feedDbStorage = feedDbStorage;
+        this.reviewCache = reviewCache;
+        this.friendshipIndex = friendshipIndex;
     }
 
     public Collection<User> findAll() {
         return userStorage.findAll();
     }
 
+    /**
+     * Страница пользователей по возрастанию id, начиная после after.
+     */
+    public Page<User> findPage(Long after, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            log.error(PAGE_LIMIT_ERR);
+            throw new ValidationException(PAGE_LIMIT_ERR);
+        }
+        // читаем на одного пользователя больше, чтобы узнать, есть ли следующая страница
+        List<User> users = userStorage.findPage(after == null ? 0 : after, pageSize + 1);
+        if (users.size() <= pageSize) {
+            return Page.<User>builder().items(users).build();
+        }
+        List<User> items = users.subList(0, pageSize);
+        return Page.<User>builder()
+                .items(items)
+                .nextCursor(items.get(pageSize - 1).getId())
+                .build();
+    }
+
     public User create(User user) {
         if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
             log.error(EMPTY_EMAIL_ERR);
@@ -51,10 +85,7 @@ public class UserService {
             log.error(BIRTHDAY_ERR);
             throw new ValidationException(BIRTHDAY_ERR);
         }
-        if (findAll().stream()
-                .map(User::getEmail)
-                .anyMatch(userEmail -> userEmail.equals(user.getEmail()))
-        ) {
+        if (userStorage.findUserIdByEmail(user.getEmail()).isPresent()) {
             log.error(DUPL_EMAIL_ERR);
             throw new ValidationException(DUPL_EMAIL_ERR);
         }
@@ -63,7 +94,13 @@ public class UserService {
         }
         log.trace("Проверки пройдены");
 
-        return userStorage.create(user);
+        try {
+            return userStorage.create(user);
+        } catch (DuplicateKeyException e) {
+            // имейл занят параллельным запросом между проверкой и вставкой
+            log.error(DUPL_EMAIL_ERR);
+            throw new ValidationException(DUPL_EMAIL_ERR);
+        }
     }
 
     public User update(User newUser) {
@@ -87,22 +124,22 @@ public class UserService {
             throw new ValidationException(BIRTHDAY_ERR);
         }
 
-        Map<Long, User> users = findAll().stream().collect(Collectors.toMap(User::getId, u -> u));
-        if (users.containsKey(newUser.getId())) {
-            User oldUser = users.get(newUser.getId());
-            if (!newUser.getEmail().equals(oldUser.getEmail())) {
-                if (users.values().stream()
-                        .filter(u -> !u.getId().equals(newUser.getId()))
-                        .map(User::getEmail)
-                        .anyMatch(userEmail -> userEmail.equals(newUser.getEmail()))
-                ) {
-                    log.error(DUPL_EMAIL_ERR);
-                    throw new ValidationException(DUPL_EMAIL_ERR);
-                }
+        if (userStorage.existsById(newUser.getId())) {
+            if (userStorage.findUserIdByEmail(newUser.getEmail())
+                    .filter(ownerId -> !ownerId.equals(newUser.getId()))
+                    .isPresent()
+            ) {
+                log.error(DUPL_EMAIL_ERR);
+                throw new ValidationException(DUPL_EMAIL_ERR);
             }
             log.trace("Проверки пройдены");
 
-            return userStorage.update(newUser);
+            try {
+                return userStorage.update(newUser);
+            } catch (DuplicateKeyException e) {
+                log.error(DUPL_EMAIL_ERR);
+                throw new ValidationException(DUPL_EMAIL_ERR);
+            }
         } else {
             log.error("Пользователь с id = {} не найден", newUser.getId());
             throw new NotFoundException("Пользователь с id = " + newUser.getId() + " не найден");
@@ -110,32 +147,43 @@ public class UserService {
     }
 
     public void addFriend(long userId, long friendId) {
-        User user = userStorage.findUserById(userId);
-        User friend = userStorage.findUserById(friendId);
-        userStorage.addFriend(user.getId(), friend.getId());
+        checkUsersExist(userId, friendId);
+        userStorage.addFriend(userId, friendId);
     }
 
     public void removeFriend(long userId, long friendId) {
-        User user = userStorage.findUserById(userId);
-        User friend = userStorage.findUserById(friendId);
-        userStorage.removeFriend(user.getId(), friend.getId());
+        checkUsersExist(userId, friendId);
+        userStorage.removeFriend(userId, friendId);
     }
 
     public Collection<User> getFriends(long userId) {
-        return userStorage.findUserById(userId).getFriends().stream()
-                .map(userStorage::findUserById)
-                .collect(Collectors.toList());
+        checkUsersExist(userId);
+        // id друзей в индексе уже отсортированы
+        return userStorage.findUsersByIds(Arrays.stream(friendshipIndex.getFriends(userId)).boxed().toList());
     }
 
     public Collection<User> getCommonFriends(long userId, long friendId) {
-        return userStorage.findUserById(userId).getFriends().stream()
-                .map(userStorage::findUserById)
-                .filter(user -> userStorage.findUserById(friendId).getFriends().contains(user.getId()))
-                .collect(Collectors.toList());
+        checkUsersExist(userId, friendId);
+        return userStorage.findUsersByIds(userStorage.findCommonFriendIds(userId, friendId));
+    }
+
+    /**
+     * Проверяет существование всех пользователей одним запросом по первичному ключу.
+     */
+    private void checkUsersExist(long... ids) {
+        List<Long> requested = Arrays.stream(ids).boxed().distinct().toList();
+        Set<Long> existing = userStorage.findExistingUserIds(requested);
+        List<Long> missing = requested.stream().filter(id -> !existing.contains(id)).toList();
+        if (!missing.isEmpty()) {
+            log.error("Пользователи с id = {} не найдены", missing);
+            throw new NotFoundException("Пользователи с id = " + missing + " не найдены");
+        }
     }
 
     public void deleteUser(long id) {
         userStorage.deleteUser(id);
+        // отзывы пользователя удалены каскадно, а к каким фильмам они относились, уже не узнать
+        reviewCache.invalidateAll();
     }
 
     public User findUserById(long id) {
@@ -146,4 +194,19 @@ public class UserService {
         findUserById(id);
         return feedDbStorage.getFeedByUser(id);
     }
+
+    public List<Feed> getUserFeed(Long id, Long after, Integer limit) {
+        if (after == null && limit == null) {
+            return getUserFeed(id);
+        }
+        int pageSize = limit == null ? DEFAULT_FEED_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_FEED_PAGE_SIZE) {
+            log.error(FEED_LIMIT_ERR);
+            throw new ValidationException(FEED_LIMIT_ERR);
+        }
+        if (!userStorage.existsById(id)) {
+            throw new NotFoundException("Пользователь с id = " + id + " не найден");
+        }
+        return feedDbStorage.getFeedByUser(id, after == null ? 0 : after, pageSize);
+    }
 }
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Comparator;
+
+/**
+ * Похожий пользователь, его оценка похожести и массив лайков, по которому она посчитана.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class Neighbour {
+    /**
+     * Порядок от худшего к лучшему: меньшая оценка хуже, при равенстве хуже больший id.
+     */
+    static final Comparator<Neighbour> WORST_FIRST = Comparator.comparingDouble(Neighbour::getScore)
+            .thenComparing(Neighbour::getUserId, Comparator.reverseOrder());
+
+    private final long userId;
+    private final double score;
+    @ToString.Exclude
+    private final long[] films;
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Подбирает id фильмов для рекомендаций по K ближайшим соседям пользователя.
+ * Фильм получает сумму оценок похожести соседей, которые его лайкнули.
+ */
+@Component
+public class RecommendationEngine {
+    private final LikesIndex likesIndex;
+    private final SimilarUsersSearch search;
+    private final SimilarityMetric metric;
+    private final int neighbours;
+
+    public RecommendationEngine(LikesIndex likesIndex,
+                                @Value("${filmorate.recommendations.metric:OVERLAP}") SimilarityMetric metric,
+                                @Value("${filmorate.recommendations.neighbours:1}") int neighbours,
+                                @Value("${filmorate.recommendations.partition-size:2048}") int partitionSize) {
+        this.likesIndex = likesIndex;
+        this.metric = metric;
+        this.neighbours = neighbours;
+        this.search = new SimilarUsersSearch(partitionSize);
+    }
+
+    public List<Neighbour> findNeighbours(long userId) {
+        return search.findNearest(userId, likesIndex.getAllLikes(), metric, neighbours);
+    }
+
+    public List<Long> recommend(long userId) {
+        return recommend(userId, findNeighbours(userId));
+    }
+
+    public List<Long> recommend(long userId, List<Neighbour> nearest) {
+        long[] userFilms = likesIndex.getLikedFilms(userId);
+        Map<Long, Double> scores = new HashMap<>();
+        for (Neighbour neighbour : nearest) {
+            for (long filmId : LikesIndex.difference(neighbour.getFilms(), userFilms)) {
+                scores.merge(filmId, neighbour.getScore(), Double::sum);
+            }
+        }
+
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<Long> filmIds = new ArrayList<>(ranked.size());
+        for (Map.Entry<Long, Double> entry : ranked) {
+            filmIds.add(entry.getKey());
+        }
+        return filmIds;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Рассчитанные рекомендации пользователя и версии лайков, по которым они получены.
+ */
+@Getter
+@AllArgsConstructor
+public class RecommendationSnapshot {
+    private final List<Long> filmIds;
+    // версии лайков самого пользователя и его соседей на момент расчета
+    private final Map<Long, Long> versions;
+    private final long computedAt;
+}
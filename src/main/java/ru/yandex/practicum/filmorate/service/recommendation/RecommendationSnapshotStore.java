@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.RecommendationStats;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище готовых рекомендаций.
+ * Снимок считается недействительным, если изменились лайки пользователя или его соседей
+ * либо он старше max-staleness. Фоновая задача заранее пересчитывает снимки активных пользователей.
+ * Лайки остальных пользователей не отслеживаются: если кто-то из них стал ближе текущих соседей,
+ * снимок это учтет только после пересчета по max-staleness-ms.
+ */
+@Slf4j
+@Component
+public class RecommendationSnapshotStore {
+    // версий меньше нуля не бывает, такой снимок будет пересчитан при следующем запросе
+    private static final long CHANGED_DURING_COMPUTE = -1;
+
+    private final RecommendationEngine recommendationEngine;
+    private final LikesIndex likesIndex;
+    private final long maxStalenessMs;
+    private final long activeWindowMs;
+
+    private final Map<Long, RecommendationSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, Long> lastAccess = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong lastServedStalenessMs = new AtomicLong();
+    private final AtomicLong maxServedStalenessMs = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong lastRefreshUsers = new AtomicLong();
+    private final AtomicLong lastRefreshDurationMs = new AtomicLong();
+    private final AtomicLong maxRefreshDurationMs = new AtomicLong();
+
+    public RecommendationSnapshotStore(RecommendationEngine recommendationEngine,
+                                       LikesIndex likesIndex,
+                                       @Value("${filmorate.recommendations.snapshot.max-staleness-ms:300000}")
+                                       long maxStalenessMs,
+                                       @Value("${filmorate.recommendations.snapshot.active-window-ms:3600000}")
+                                       long activeWindowMs) {
+        this.recommendationEngine = recommendationEngine;
+        this.likesIndex = likesIndex;
+        this.maxStalenessMs = maxStalenessMs;
+        this.activeWindowMs = activeWindowMs;
+    }
+
+    public List<Long> getRecommendedFilmIds(long userId) {
+        long now = System.currentTimeMillis();
+        lastAccess.put(userId, now);
+
+        RecommendationSnapshot snapshot = snapshots.get(userId);
+        if (snapshot != null && isValid(snapshot, now)) {
+            hits.incrementAndGet();
+            long staleness = now - snapshot.getComputedAt();
+            lastServedStalenessMs.set(staleness);
+            maxServedStalenessMs.accumulateAndGet(staleness, Math::max);
+            return snapshot.getFilmIds();
+        }
+        if (snapshot != null) {
+            invalidations.incrementAndGet();
+        }
+        misses.incrementAndGet();
+        return compute(userId).getFilmIds();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.snapshot.refresh-interval-ms:60000}",
+            initialDelayString = "${filmorate.recommendations.snapshot.refresh-interval-ms:60000}")
+    public void refresh() {
+        long start = System.currentTimeMillis();
+        int refreshed = 0;
+        for (Map.Entry<Long, Long> access : lastAccess.entrySet()) {
+            long userId = access.getKey();
+            if (start - access.getValue() > activeWindowMs) {
+                lastAccess.remove(userId);
+                snapshots.remove(userId);
+                continue;
+            }
+            RecommendationSnapshot snapshot = snapshots.get(userId);
+            // пересчитываем заранее, не дожидаясь, пока снимок устареет
+            if (snapshot == null || !isValid(snapshot, start) || start - snapshot.getComputedAt() > maxStalenessMs / 2) {
+                compute(userId);
+                refreshed++;
+            }
+        }
+        long duration = System.currentTimeMillis() - start;
+        refreshes.incrementAndGet();
+        lastRefreshUsers.set(refreshed);
+        lastRefreshDurationMs.set(duration);
+        maxRefreshDurationMs.accumulateAndGet(duration, Math::max);
+        log.debug("Пересчитаны рекомендации для {} пользователей за {} мс", refreshed, duration);
+    }
+
+    public RecommendationStats getStats() {
+        return RecommendationStats.builder()
+                .snapshots(snapshots.size())
+                .activeUsers(lastAccess.size())
+                .hits(hits.get())
+                .misses(misses.get())
+                .invalidations(invalidations.get())
+                .lastServedStalenessMs(lastServedStalenessMs.get())
+                .maxServedStalenessMs(maxServedStalenessMs.get())
+                .refreshes(refreshes.get())
+                .lastRefreshUsers(lastRefreshUsers.get())
+                .lastRefreshDurationMs(lastRefreshDurationMs.get())
+                .maxRefreshDurationMs(maxRefreshDurationMs.get())
+                .build();
+    }
+
+    private RecommendationSnapshot compute(long userId) {
+        long computedAt = System.currentTimeMillis();
+        // версия пользователя читается до поиска: изменение во время расчета сделает снимок недействительным
+        Map<Long, Long> versions = new HashMap<>();
+        versions.put(userId, likesIndex.getVersion(userId));
+        List<Neighbour> neighbours = recommendationEngine.findNeighbours(userId);
+        for (Neighbour neighbour : neighbours) {
+            // индекс сначала заменяет массив, потом увеличивает версию. Если после чтения версии в индексе
+            // все еще тот массив, по которому считался поиск, версия не новее этого массива
+            long version = likesIndex.getVersion(neighbour.getUserId());
+            if (likesIndex.getLikedFilms(neighbour.getUserId()) != neighbour.getFilms()) {
+                version = CHANGED_DURING_COMPUTE;
+            }
+            versions.put(neighbour.getUserId(), version);
+        }
+        RecommendationSnapshot snapshot = new RecommendationSnapshot(
+                List.copyOf(recommendationEngine.recommend(userId, neighbours)), versions, computedAt);
+        snapshots.put(userId, snapshot);
+        return snapshot;
+    }
+
+    private boolean isValid(RecommendationSnapshot snapshot, long now) {
+        if (now - snapshot.getComputedAt() > maxStalenessMs) {
+            return false;
+        }
+        for (Map.Entry<Long, Long> version : snapshot.getVersions().entrySet()) {
+            if (likesIndex.getVersion(version.getKey()) != version.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Поиск K наиболее похожих пользователей.
+ * Пользователи делятся на части, каждая часть обрабатывается в ForkJoinPool
+ * и держит собственную ограниченную кучу из K лучших, затем кучи сливаются.
+ */
+public class SimilarUsersSearch {
+    private final int partitionSize;
+
+    public SimilarUsersSearch(int partitionSize) {
+        this.partitionSize = Math.max(1, partitionSize);
+    }
+
+    /**
+     * Возвращает до k соседей с положительной оценкой, от самого похожего к наименее похожему.
+     */
+    public List<Neighbour> findNearest(long userId, Map<Long, long[]> likes, SimilarityMetric metric, int k) {
+        long[] userFilms = likes.getOrDefault(userId, new long[0]);
+        if (userFilms.length == 0 || k <= 0) {
+            return List.of();
+        }
+
+        long[] userIds = new long[likes.size()];
+        long[][] films = new long[likes.size()][];
+        int size = 0;
+        for (Map.Entry<Long, long[]> entry : likes.entrySet()) {
+            if (entry.getKey() == userId || size == userIds.length) {
+                continue;
+            }
+            userIds[size] = entry.getKey();
+            films[size] = entry.getValue();
+            size++;
+        }
+
+        Partition task = new Partition(userFilms, userIds, films, 0, size, metric, k);
+        PriorityQueue<Neighbour> top = size <= partitionSize ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+
+        List<Neighbour> result = new ArrayList<>(top);
+        result.sort(Neighbour.WORST_FIRST.reversed());
+        return result;
+    }
+
+    private class Partition extends RecursiveTask<PriorityQueue<Neighbour>> {
+        private final long[] userFilms;
+        private final long[] userIds;
+        private final long[][] films;
+        private final int from;
+        private final int to;
+        private final SimilarityMetric metric;
+        private final int k;
+
+        Partition(long[] userFilms, long[] userIds, long[][] films, int from, int to, SimilarityMetric metric, int k) {
+            this.userFilms = userFilms;
+            this.userIds = userIds;
+            this.films = films;
+            this.from = from;
+            this.to = to;
+            this.metric = metric;
+            this.k = k;
+        }
+
+        @Override
+        protected PriorityQueue<Neighbour> compute() {
+            if (to - from <= partitionSize) {
+                return scan();
+            }
+            int middle = (from + to) >>> 1;
+            Partition left = new Partition(userFilms, userIds, films, from, middle, metric, k);
+            Partition right = new Partition(userFilms, userIds, films, middle, to, metric, k);
+            left.fork();
+            PriorityQueue<Neighbour> top = right.compute();
+            for (Neighbour neighbour : left.join()) {
+                offer(top, neighbour);
+            }
+            return top;
+        }
+
+        private PriorityQueue<Neighbour> scan() {
+            PriorityQueue<Neighbour> top = new PriorityQueue<>(k + 1, Neighbour.WORST_FIRST);
+            for (int i = from; i < to; i++) {
+                int common = LikesIndex.intersectionSize(userFilms, films[i]);
+                if (common == 0) {
+                    continue;
+                }
+                double score = metric.score(common, userFilms.length, films[i].length);
+                if (score > 0) {
+                    offer(top, new Neighbour(userIds[i], score, films[i]));
+                }
+            }
+            return top;
+        }
+
+        private void offer(PriorityQueue<Neighbour> top, Neighbour neighbour) {
+            if (top.size() < k) {
+                top.add(neighbour);
+            } else if (Neighbour.WORST_FIRST.compare(neighbour, top.peek()) > 0) {
+                top.poll();
+                top.add(neighbour);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service.recommendation;
+
+/**
+ * Мера похожести двух пользователей по их лайкам.
+ * common - количество общих фильмов, first и second - количество лайков у каждого пользователя.
+ */
+public enum SimilarityMetric {
+    OVERLAP {
+        @Override
+        public double score(int common, int first, int second) {
+            return common;
+        }
+    },
+    JACCARD {
+        @Override
+        public double score(int common, int first, int second) {
+            int union = first + second - common;
+            return union == 0 ? 0 : (double) common / union;
+        }
+    },
+    COSINE {
+        @Override
+        public double score(int common, int first, int second) {
+            return first == 0 || second == 0 ? 0 : common / Math.sqrt((double) first * second);
+        }
+    };
+
+    public abstract double score(int common, int first, int second);
+}
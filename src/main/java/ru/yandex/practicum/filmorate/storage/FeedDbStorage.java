@@ -1,32 +1,124 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.FeedStats;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.mappers.FeedRowMapper;
 
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * События ленты пишутся отложенно: createFeed кладет событие в ограниченную очередь,
+ * фоновый поток сохраняет накопленное пакетами по размеру очереди или по таймеру.
+ * Если очередь заполнена, вызывающий поток ждет, пока фоновый поток ее сбросит.
+ * Перед чтением ленты читающий поток дожидается сброса очереди фоновым потоком,
+ * поэтому пользователь всегда видит свои события.
+ * Событие попадает в очередь только после фиксации транзакции, в которой оно создано.
+ */
 @Repository
 @RequiredArgsConstructor
 @Slf4j
 public class FeedDbStorage {
+    private static final String INSERT_FEED = "INSERT INTO feed(user_id, entity_id, time_stamp, event_type, operation) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    // event_id - первичный ключ, поэтому DISTINCT не нужен; запрос идет по индексу FEED_USER_TIME_IDX
+    private static final String FIND_FEED_BY_USER = "SELECT event_id, user_id, entity_id, time_stamp, " +
+            "event_type, operation FROM feed WHERE user_id = ? ORDER BY time_stamp, event_id";
+    private static final String FIND_FEED_PAGE_BY_USER = "SELECT event_id, user_id, entity_id, time_stamp, " +
+            "event_type, operation FROM feed WHERE user_id = ? AND event_id > ? ORDER BY event_id LIMIT ?";
+    private static final String FIND_FEEDS_BY_IDS = "SELECT event_id, user_id, entity_id, time_stamp, " +
+            "event_type, operation FROM feed WHERE event_id IN (:ids) ORDER BY event_id";
+    private static final String FIND_LAST_FEED_IDS_BY_USERS = "SELECT event_id FROM feed " +
+            "WHERE user_id IN (:userIds) ORDER BY event_id DESC LIMIT :limit";
 
     private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
     private final FeedRowMapper feedRowMapper;
+    private final ObjectProvider<FeedListener> feedListeners;
+    private final PlatformTransactionManager transactionManager;
+    private final @Value("${filmorate.feed.write-behind.enabled:true}") boolean writeBehindEnabled;
+    private final @Value("${filmorate.feed.queue-capacity:10000}") int queueCapacity;
+    private final @Value("${filmorate.feed.flush-size:500}") int flushSize;
+    private final @Value("${filmorate.feed.flush-interval-ms:200}") long flushIntervalMs;
+
+    private final Object flushLock = new Object();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong maxQueueSize = new AtomicLong();
+    private final AtomicLong lastFlushSize = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private BlockingQueue<Feed> queue;
+    private ScheduledExecutorService writer;
+    private TransactionTemplate batchTransaction;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        // пакет пишется в своей транзакции или точке сохранения транзакции вызывающего
+        batchTransaction = new TransactionTemplate(transactionManager);
+        batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        if (writeBehindEnabled) {
+            writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "feed-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writer.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        flush();
+        log.info("Очередь событий ленты сброшена при остановке, записано {}", written.get());
+    }
 
     public List<Feed> findAllFeeds() {
+        flushBeforeRead();
         String query = "SELECT event_id, user_id, entity_id, time_stamp, event_type, operation FROM feed";
         List<Feed> feeds = jdbc.query(query, feedRowMapper);
         log.info("Получены все события {}.", feeds);
@@ -51,36 +143,235 @@ public class FeedDbStorage {
                 .eventType(eventType)
                 .operation(operation)
                 .build();
-        String sqlQuery = "INSERT INTO feed(user_id, entity_id, time_stamp, event_type, operation) VALUES (?, ?, ?, ?, ?)";
-        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
-            PreparedStatement statement = connection.prepareStatement(sqlQuery, Statement.RETURN_GENERATED_KEYS);
-            statement.setLong(1, feed.getUserId());
-            statement.setLong(2, feed.getEntityId());
-            statement.setLong(3, feed.getTimestamp());
-            statement.setString(4, feed.getEventType().toString());
-            statement.setString(5, feed.getOperation().toString());
-            return statement;
-        }, keyHolder);
-        Long feedId;
-        if (Objects.nonNull(keyHolder.getKey())) {
-            feedId = keyHolder.getKey().longValue();
-        } else {
-            throw new NotFoundException("Ошибка присвоения id событию");
-        }
-        log.info("Создано новое событие с id {}, userId {}, entityId {}, eventType {}, operation {}", feedId, userId, entityId, eventType, operation);
-        getFeedById(feedId).orElseThrow();
+        createFeeds(List.of(feed));
+        log.info("Создано новое событие userId {}, entityId {}, eventType {}, operation {}",
+                userId, entityId, eventType, operation);
+    }
+
+    /**
+     * Ставит события в очередь записи после фиксации текущей транзакции, при откате события теряются
+     * вместе с породившим их изменением. При выключенной отложенной записи сохраняет их сразу
+     * в той же транзакции.
+     */
+    public void createFeeds(List<Feed> feeds) {
+        if (!writeBehindEnabled) {
+            insertFeeds(feeds);
+            return;
+        }
+        AfterCommit.run(() -> enqueue(feeds));
+    }
+
+    private void enqueue(List<Feed> feeds) {
+        for (Feed feed : feeds) {
+            while (!queue.offer(feed)) {
+                // очередь заполнена: вызывающий поток ждет сброса, это и есть обратное давление.
+                // Сброс идет в потоке записи, чтобы чужие события не попали в транзакцию вызывающего
+                backpressureWaits.incrementAndGet();
+                awaitWriterFlush();
+            }
+            enqueued.incrementAndGet();
+        }
+        int size = queue.size();
+        maxQueueSize.accumulateAndGet(size, Math::max);
+        if (size >= flushSize && flushScheduled.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * Сохраняет все накопленные в очереди события. Вызывается только из потока записи
+     * и при остановке, поэтому запись не попадает в транзакцию читающего потока,
+     * а порядок записи совпадает с порядком постановки событий.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            List<Feed> batch = new ArrayList<>(flushSize);
+            while (queue.drainTo(batch, flushSize) > 0) {
+                insertFeeds(batch);
+                flushes.incrementAndGet();
+                lastFlushSize.set(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushBeforeRead() {
+        if (writer != null) {
+            awaitWriterFlush();
+        }
+    }
+
+    private void awaitWriterFlush() {
+        try {
+            writer.submit(this::flushQuietly).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Не удалось дождаться записи событий ленты");
+        } catch (ExecutionException e) {
+            throw new InternalServerException("Не удалось дождаться записи событий ленты");
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сохранить события ленты", e);
+        }
+    }
+
+    /**
+     * Пакетная вставка, при ошибке пакета события сохраняются по одному,
+     * чтобы одно некорректное событие не теряло остальные. H2 продолжает пакет после ошибочной строки,
+     * поэтому пакет выполняется в транзакции: при ошибке он откатывается целиком и строки не дублируются.
+     * Сохраненные события с присвоенными id передаются слушателям.
+     */
+    private void insertFeeds(List<Feed> feeds) {
+        if (feeds.isEmpty()) {
+            return;
+        }
+        List<Feed> saved = new ArrayList<>(feeds.size());
+        try {
+            GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+            batchTransaction.executeWithoutResult(status -> jdbc.batchUpdate(connection ->
+                            connection.prepareStatement(INSERT_FEED, Statement.RETURN_GENERATED_KEYS),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            setFeedValues(ps, feeds.get(i));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return feeds.size();
+                        }
+                    }, keyHolder));
+            List<Map<String, Object>> keys = keyHolder.getKeyList();
+            for (int i = 0; i < feeds.size(); i++) {
+                if (i < keys.size()) {
+                    feeds.get(i).setEventId(extractEventId(keys.get(i)));
+                }
+                saved.add(feeds.get(i));
+            }
+            written.addAndGet(feeds.size());
+        } catch (DataAccessException e) {
+            log.warn("Пакет из {} событий не сохранен, сохраняем по одному", feeds.size(), e);
+            for (Feed feed : feeds) {
+                try {
+                    GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+                    jdbc.update(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(INSERT_FEED,
+                                Statement.RETURN_GENERATED_KEYS);
+                        setFeedValues(statement, feed);
+                        return statement;
+                    }, keyHolder);
+                    feed.setEventId(extractEventId(keyHolder.getKeys()));
+                    saved.add(feed);
+                    written.incrementAndGet();
+                } catch (DataAccessException rowError) {
+                    failed.incrementAndGet();
+                    log.error("Событие {} не сохранено", feed, rowError);
+                }
+            }
+        }
+        // слушатели получают события только после фиксации, иначе подписчики увидят откаченное изменение
+        AfterCommit.run(() -> notifyListeners(saved));
+    }
+
+    private void notifyListeners(List<Feed> saved) {
+        List<Feed> withIds = saved.stream().filter(feed -> feed.getEventId() != null).toList();
+        if (withIds.isEmpty()) {
+            return;
+        }
+        feedListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onFeedsWritten(withIds);
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки событий ленты в {}", listener.getClass().getSimpleName(), e);
+            }
+        });
+    }
+
+    // в зависимости от драйвера ключи приходят только с EVENT_ID или со всеми столбцами строки
+    private static Long extractEventId(Map<String, Object> key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        Object id = key.entrySet().stream()
+                .filter(entry -> entry.getKey().equalsIgnoreCase("event_id"))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElseGet(() -> key.values().iterator().next());
+        return ((Number) id).longValue();
+    }
+
+    /**
+     * События по набору id в порядке возрастания id.
+     */
+    public List<Feed> findFeedsByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return namedJdbc.query(FIND_FEEDS_BY_IDS, new MapSqlParameterSource("ids", ids), feedRowMapper);
+    }
+
+    /**
+     * Id последних событий набора пользователей, не более limit, по возрастанию.
+     */
+    public List<Long> findLastFeedIdsByUsers(Collection<Long> userIds, int limit) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        flushBeforeRead();
+        List<Long> ids = new ArrayList<>(namedJdbc.queryForList(FIND_LAST_FEED_IDS_BY_USERS, new MapSqlParameterSource()
+                .addValue("userIds", userIds)
+                .addValue("limit", limit), Long.class));
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    private void setFeedValues(PreparedStatement statement, Feed feed) throws SQLException {
+        statement.setLong(1, feed.getUserId());
+        statement.setLong(2, feed.getEntityId());
+        statement.setLong(3, feed.getTimestamp());
+        statement.setString(4, feed.getEventType().toString());
+        statement.setString(5, feed.getOperation().toString());
+    }
+
+    public FeedStats getStats() {
+        return FeedStats.builder()
+                .queueSize(queue.size())
+                .queueCapacity(queueCapacity)
+                .maxQueueSize(maxQueueSize.get())
+                .enqueued(enqueued.get())
+                .written(written.get())
+                .failed(failed.get())
+                .flushes(flushes.get())
+                .backpressureWaits(backpressureWaits.get())
+                .lastFlushSize(lastFlushSize.get())
+                .build();
     }
 
     public List<Feed> getFeedByUser(Long userId) {
-        String query = "SELECT DISTINCT event_id, user_id, entity_id, time_stamp, event_type, operation " +
-                "FROM feed " +
-                "WHERE user_id = ? " +
-                "ORDER BY time_stamp";
-        List<Feed> feeds = jdbc.query(query, feedRowMapper, userId);
+        flushBeforeRead();
+        List<Feed> feeds = jdbc.query(FIND_FEED_BY_USER, feedRowMapper, userId);
         log.info("Получены события для пользователя с id {}", userId);
         return feeds;
     }
+
+    /**
+     * Страница ленты после события afterEventId. Поиск идет по индексу FEED_USER_EVENT_IDX,
+     * поэтому время ответа не зависит от длины истории пользователя.
+     */
+    public List<Feed> getFeedByUser(Long userId, long afterEventId, int limit) {
+        flushBeforeRead();
+        List<Feed> feeds = jdbc.query(FIND_FEED_PAGE_BY_USER, feedRowMapper, userId, afterEventId, limit);
+        log.info("Получено {} событий для пользователя с id {} после события {}", feeds.size(), userId, afterEventId);
+        return feeds;
+    }
 }
 
 
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Feed;
+
+import java.util.List;
+
+/**
+ * Получает события ленты сразу после их записи в БД, у событий уже заполнен eventId.
+ * Вызывается из потока записи, поэтому реализация не должна надолго его занимать.
+ */
+public interface FeedListener {
+    void onFeedsWritten(List<Feed> feeds);
+}
@@ -18,7 +18,6 @@ import ru.yandex.practicum.filmorate.storage.mappers.ReviewRowMapper;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -26,6 +25,23 @@ import java.util.Optional;
 @Slf4j
 @RequiredArgsConstructor
 public class ReviewDbStorage {
+    // рейтинг полезности хранится в REVIEWS.USEFUL и меняется вместе с оценками в USEFUL
+    private static final String FIND_REVIEW_BY_ID = "SELECT review_id, content, is_positive, user_id, film_id, " +
+            "useful FROM reviews WHERE review_id = ?";
+    private static final String FIND_REVIEWS_BY_FILM = "SELECT review_id, content, is_positive, user_id, film_id, " +
+            "useful FROM reviews WHERE film_id = ? ORDER BY useful DESC, review_id LIMIT ?";
+    private static final String FIND_ALL_REVIEWS = "SELECT review_id, content, is_positive, user_id, film_id, " +
+            "useful FROM reviews ORDER BY useful DESC, review_id LIMIT ?";
+    // оценка одна на пару (review_id, user_id): повторная оценка заменяет предыдущую
+    private static final String UPSERT_VOTE = "MERGE INTO useful (review_id, user_id, is_like) " +
+            "KEY (review_id, user_id) VALUES (?, ?, ?)";
+    private static final String DELETE_VOTE = "DELETE FROM useful WHERE review_id = ? AND user_id = ? AND is_like = ?";
+    private static final String LOCK_REVIEW = "SELECT film_id FROM reviews WHERE review_id = ? FOR UPDATE";
+    private static final String FIND_VOTE = "SELECT is_like FROM useful WHERE review_id = ? AND user_id = ?";
+    private static final String ADD_USEFUL = "UPDATE reviews SET useful = useful + ? WHERE review_id = ?";
+    // полный пересчет по всем оценкам отзыва, только для исправления рассогласованного рейтинга
+    private static final String RECOUNT_USEFUL = "UPDATE reviews SET useful = (SELECT COALESCE(SUM(CASE WHEN " +
+            "is_like THEN 1 ELSE -1 END), 0) FROM useful WHERE review_id = ?) WHERE review_id = ?";
 
     private final JdbcTemplate jdbc;
     private final ReviewRowMapper reviewMapper;
@@ -74,7 +90,7 @@ public class ReviewDbStorage {
         return review;
     }
 
-    public void deleteReview(Long id) {
+    public Review deleteReview(Long id) {
         Review review = getReviewById(id).orElseThrow();
         String deleteUsefulQuery = "DELETE FROM useful WHERE review_id = ?";
         jdbc.update(deleteUsefulQuery, id);
@@ -82,21 +98,12 @@ public class ReviewDbStorage {
         jdbc.update(deleteReviewQuery, id);
         feedDbStorage.createFeed(review.getUserId(), id, EventType.REVIEW, Operation.REMOVE);
         log.info("Отзыв {} удален  ", id);
+        return review;
     }
 
     public Optional<Review> getReviewById(Long id) {
-        String query = "SELECT r.review_id, r.content, r.is_positive, u.user_name, f.film_name, " +
-                "r.user_id, r.film_id, " +
-                "COALESCE(SUM(CASE WHEN uf.is_like = TRUE THEN 1 ELSE 0 END), 0) AS likes_count, " +
-                "COALESCE(SUM(CASE WHEN uf.is_like = FALSE THEN 1 ELSE 0 END), 0) AS dislikes_count " +
-                "FROM reviews r " +
-                "JOIN users u ON r.user_id = u.user_id " +
-                "JOIN films f ON r.film_id = f.film_id " +
-                "LEFT JOIN useful uf ON r.review_id = uf.review_id " +
-                "WHERE r.review_id = ? " +
-                "GROUP BY r.review_id, r.content, r.is_positive, u.user_name, f.film_name, r.user_id, r.film_id";
         try {
-            Review result = jdbc.queryForObject(query, reviewMapper, id);
+            Review result = jdbc.queryForObject(FIND_REVIEW_BY_ID, reviewMapper, id);
             return Optional.ofNullable(result);
         } catch (EmptyResultDataAccessException e) {
             throw new NotFoundException("Отзыв с id " + id + " не найден");
@@ -104,58 +111,74 @@ public class ReviewDbStorage {
     }
 
     public List<Review> getReviewByFilm(Long filmId, int count) {
-        String reviewByFilm = "SELECT r.review_id, r.content, r.is_positive, r.user_id, r.film_id, " +
-                "COALESCE(likes.likes_count, 0) AS likes_count, " +
-                "COALESCE(dislikes.dislikes_count, 0) AS dislikes_count " +
-                "FROM reviews r " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS likes_count FROM useful WHERE is_like = TRUE " +
-                "GROUP BY review_id) likes ON likes.review_id = r.review_id " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS dislikes_count FROM useful WHERE is_like = FALSE " +
-                "GROUP BY review_id) dislikes ON dislikes.review_id = r.review_id " +
-                "WHERE r.film_id = ? " +
-                "ORDER BY (likes_count - dislikes_count) DESC, likes_count DESC  " +
-                "LIMIT ?";
-        List<Review> reviews = jdbc.query(reviewByFilm, reviewMapper, filmId, count);
+        List<Review> reviews = jdbc.query(FIND_REVIEWS_BY_FILM, reviewMapper, filmId, count);
         log.info("Получены отзывы о фильме id = {} {}. Количество отзывов {}.", filmId, reviews, reviews.size());
         return reviews;
     }
 
     public List<Review> getAllReviews(int count) {
-        final String review = "SELECT r.review_id, r.content, r.is_positive, r.user_id, r.film_id, likes.likes_count, " +
-                "dislikes.dislikes_count " +
-                "FROM reviews r " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS likes_count FROM useful WHERE is_like = TRUE " +
-                "GROUP BY review_id) likes " +
-                "ON likes.review_id = r.review_id " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS dislikes_count FROM useful WHERE is_like = FALSE " +
-                "GROUP BY review_id) dislikes " +
-                "ON dislikes.review_id = r.review_id " +
-                "ORDER BY (COALESCE(likes.likes_count, 0) - COALESCE(dislikes.dislikes_count, 0)) DESC " +
-                "LIMIT ?";
-        List<Review> reviews = jdbc.query(review, reviewMapper, count);
+        List<Review> reviews = jdbc.query(FIND_ALL_REVIEWS, reviewMapper, count);
         log.info("Получены отзывы (не более {}) о фильмах {}.", count, reviews);
         return reviews;
     }
 
-    public void likeOrDislikeToReview(Long reviewId, Long userId, boolean isLike) {
-        String checkSql = "SELECT is_like FROM useful WHERE review_id = ? AND user_id = ?";
-        List<Map<String, Object>> likeDislike = jdbc.queryForList(checkSql, reviewId, userId);
-
-        if (!likeDislike.isEmpty()) {
-            String updateSql = "UPDATE useful SET is_like = ? WHERE review_id = ? AND user_id = ?";
-            jdbc.update(updateSql, isLike, reviewId, userId);
-            log.info("Пользователь id={} изменил {} на {} отзыву c id={}.", userId, !isLike ? "лайк" : "дизлайк", isLike ? "лайк" : "дизлайк", reviewId);
-        } else {
-            String insertSql = "INSERT INTO useful (review_id, user_id, is_like) VALUES (?, ?, ?)";
-            jdbc.update(insertSql, reviewId, userId, isLike);
-            log.info("Пользователь id={} поставил {} отзыву c id={}", userId, isLike ? "лайк" : "дизлайк", reviewId);
+    /**
+     * Ставит или меняет оценку отзыва одним MERGE по ключу (review_id, user_id) и меняет рейтинг
+     * на разницу с прежней оценкой: +1/-1 за новую, ±2 за смену знака, 0 за повтор.
+     * Строка отзыва блокируется в начале транзакции, поэтому конкурентные оценки одного отзыва
+     * выполняются по очереди и прежняя оценка читается уже после предыдущего изменения.
+     * Возвращает id фильма, к которому относится отзыв.
+     */
+    @Transactional
+    public Long likeOrDislikeToReview(Long reviewId, Long userId, boolean isLike) {
+        Long filmId = lockReview(reviewId);
+        Boolean previous = findVote(reviewId, userId);
+        if (!Objects.equals(previous, isLike)) {
+            jdbc.update(UPSERT_VOTE, reviewId, userId, isLike);
+            int delta = previous == null ? voteWeight(isLike) : 2 * voteWeight(isLike);
+            jdbc.update(ADD_USEFUL, delta, reviewId);
         }
+        log.info("Пользователь id={} поставил {} отзыву c id={}", userId, isLike ? "лайк" : "дизлайк", reviewId);
+        return filmId;
     }
 
-    public void deleteLikeOrDislike(Long reviewId, Long userId, boolean isLike) {
+    @Transactional
+    public Long deleteLikeOrDislike(Long reviewId, Long userId, boolean isLike) {
         String action = isLike ? "Лайк" : "Дизлайк";
-        final String sql = "DELETE FROM useful WHERE review_id = ? AND user_id = ?";
-        jdbc.update(sql, reviewId, userId);
+        Long filmId = lockReview(reviewId);
+        if (Objects.equals(findVote(reviewId, userId), isLike)) {
+            jdbc.update(DELETE_VOTE, reviewId, userId, isLike);
+            jdbc.update(ADD_USEFUL, -voteWeight(isLike), reviewId);
+        }
         log.info(action + " удален.");
+        return filmId;
+    }
+
+    /**
+     * Пересчитывает рейтинг отзыва по всем его оценкам. Нужен только для исправления рейтинга,
+     * разошедшегося с таблицей USEFUL, например после ручной правки данных.
+     */
+    @Transactional
+    public void recountUseful(Long reviewId) {
+        lockReview(reviewId);
+        jdbc.update(RECOUNT_USEFUL, reviewId, reviewId);
+        log.info("Рейтинг отзыва с id={} пересчитан", reviewId);
+    }
+
+    private Boolean findVote(Long reviewId, Long userId) {
+        List<Boolean> votes = jdbc.queryForList(FIND_VOTE, Boolean.class, reviewId, userId);
+        return votes.isEmpty() ? null : votes.get(0);
+    }
+
+    private static int voteWeight(boolean isLike) {
+        return isLike ? 1 : -1;
+    }
+
+    private Long lockReview(Long reviewId) {
+        List<Long> filmIds = jdbc.queryForList(LOCK_REVIEW, Long.class, reviewId);
+        if (filmIds.isEmpty()) {
+            throw new NotFoundException("Отзыв с id " + reviewId + " не найден");
+        }
+        return filmIds.get(0);
     }
-}
\ No newline at end of file
+}
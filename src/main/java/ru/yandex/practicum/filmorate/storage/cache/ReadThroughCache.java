@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш справочных данных в памяти: при промахе значение читается из БД и запоминается.
+ * Модели изменяемые, поэтому кэш хранит свои копии и каждому читателю отдает новую копию.
+ */
+public class ReadThroughCache<K, V> {
+    private final Map<K, V> values = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copier;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // кэш не вытесняет записи сам, считаются только явные сбросы после изменений
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ReadThroughCache(UnaryOperator<V> copier) {
+        this.copier = copier;
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        V value = values.get(key);
+        if (value != null) {
+            hits.incrementAndGet();
+            return copier.apply(value);
+        }
+        misses.incrementAndGet();
+        value = loader.apply(key);
+        if (value != null) {
+            values.put(key, copier.apply(value));
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        values.put(key, copier.apply(value));
+    }
+
+    public void putAll(Map<K, V> newValues) {
+        newValues.forEach(this::put);
+    }
+
+    public void invalidate(K key) {
+        if (values.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public CacheStats getStats() {
+        long hitCount = hits.get();
+        long requestCount = hitCount + misses.get();
+        return CacheStats.builder()
+                .hits(hitCount)
+                .misses(misses.get())
+                .invalidations(invalidations.get())
+                .size(values.size())
+                .hitRatio(requestCount == 0 ? 0 : (double) hitCount / requestCount)
+                .build();
+    }
+}
@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Review;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Кэш отсортированных по полезности отзывов к фильму. Число фильмов ограничено, при переполнении
+ * вытесняется фильм, который дольше всех не читали; запись живет не дольше ttl.
+ * Список хранится вместе с размером, с которым его читали из БД: запрос на меньшее число
+ * отзывов обслуживается из кэша, на большее — читает список заново.
+ * Отзывы изменяемые, поэтому кэш хранит свои копии и каждому читателю отдает новые копии.
+ */
+@Slf4j
+@Component
+public class ReviewCache {
+    private final int maxFilms;
+    private final long ttlNanos;
+    private final Map<Long, Entry> entries;
+    private long version;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ReviewCache(@Value("${filmorate.reviews.cache.max-films:1000}") int maxFilms,
+                       @Value("${filmorate.reviews.cache.ttl-ms:60000}") long ttlMs) {
+        this.maxFilms = maxFilms;
+        this.ttlNanos = ttlMs * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > ReviewCache.this.maxFilms) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Первые count отзывов к фильму; при промахе список читается через loader с тем же count.
+     */
+    public List<Review> get(long filmId, int count, IntFunction<List<Review>> loader) {
+        long loadVersion;
+        synchronized (this) {
+            Entry entry = entries.get(filmId);
+            if (entry != null && System.nanoTime() - entry.loadedAt > ttlNanos) {
+                entries.remove(filmId);
+                evictions++;
+                entry = null;
+            }
+            if (entry != null && entry.covers(count)) {
+                hits++;
+                return copy(entry.reviews.subList(0, Math.min(count, entry.reviews.size())));
+            }
+            misses++;
+            loadVersion = version;
+        }
+        List<Review> reviews = loader.apply(count);
+        synchronized (this) {
+            // за время чтения отзывы могли измениться: такой список отдаем, но не кэшируем
+            if (loadVersion == version) {
+                entries.put(filmId, new Entry(copy(reviews), count, System.nanoTime()));
+            }
+        }
+        return reviews;
+    }
+
+    /**
+     * Сбрасывает список фильма. Вызывается после фиксации изменения отзыва или оценки.
+     */
+    public synchronized void invalidate(long filmId) {
+        version++;
+        if (entries.remove(filmId) != null) {
+            invalidations++;
+        }
+    }
+
+    /**
+     * Сбрасывает весь кэш, например после удаления пользователя вместе с его отзывами.
+     */
+    public synchronized void invalidateAll() {
+        version++;
+        invalidations += entries.size();
+        entries.clear();
+        log.debug("Кэш отзывов очищен");
+    }
+
+    private static List<Review> copy(List<Review> reviews) {
+        return reviews.stream()
+                .map(review -> review.toBuilder().build())
+                .toList();
+    }
+
+    public synchronized CacheStats getStats() {
+        long requestCount = hits + misses;
+        return CacheStats.builder()
+                .hits(hits)
+                .misses(misses)
+                .evictions(evictions)
+                .invalidations(invalidations)
+                .size(entries.size())
+                .hitRatio(requestCount == 0 ? 0 : (double) hits / requestCount)
+                .build();
+    }
+
+    private static class Entry {
+        private final List<Review> reviews;
+        private final int count;
+        private final long loadedAt;
+
+        private Entry(List<Review> reviews, int count, long loadedAt) {
+            this.reviews = reviews;
+            this.count = count;
+            this.loadedAt = loadedAt;
+        }
+
+        // список короче запрошенного — это все отзывы к фильму
+        private boolean covers(int requested) {
+            return requested <= count || reviews.size() < count;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.director;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -8,17 +9,28 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.cache.ReadThroughCache;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSuggestIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
 public class DirectorStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<Director> directorMapper;
+    private final FilmSearchIndex searchIndex;
+    private final FilmSuggestIndex suggestIndex;
+    private final ReadThroughCache<Long, Director> directorCache =
+            new ReadThroughCache<>(director -> director.toBuilder().build());
 
     private static final String FIND_ALL_DIRECTORS_QUERY = "SELECT * FROM directors order by director_id";
     private static final String FIND_DIRECTOR_BY_ID_QUERY = "SELECT * FROM directors WHERE director_id = ?";
@@ -27,16 +39,25 @@ public class DirectorStorage {
     private static final String DELETE_DIRECTOR = "DELETE FROM directors WHERE director_id = ?";
     private static final String DELETE_FILMS_DIRECTOR = "DELETE FROM FILM_DIRECTORS WHERE director_id = ?";
 
+    @PostConstruct
+    public void loadCache() {
+        findAllDirectors();
+    }
+
     public Collection<Director> findAllDirectors() {
-        return jdbc.query(FIND_ALL_DIRECTORS_QUERY, directorMapper);
+        List<Director> directors = jdbc.query(FIND_ALL_DIRECTORS_QUERY, directorMapper);
+        directorCache.putAll(directors.stream().collect(Collectors.toMap(Director::getId, Function.identity())));
+        return directors;
     }
 
     public Director findDirectorById(long directorId) {
-        try {
-            return jdbc.queryForObject(FIND_DIRECTOR_BY_ID_QUERY, directorMapper, directorId);
-        } catch (EmptyResultDataAccessException ignored) {
-            throw new NotFoundException("Режиссер с id = " + directorId + " не найден");
-        }
+        return directorCache.get(directorId, id -> {
+            try {
+                return jdbc.queryForObject(FIND_DIRECTOR_BY_ID_QUERY, directorMapper, id);
+            } catch (EmptyResultDataAccessException ignored) {
+                throw new NotFoundException("Режиссер с id = " + id + " не найден");
+            }
+        });
     }
 
     public Director create(Director director) {
@@ -56,6 +77,9 @@ public class DirectorStorage {
         }
 
         director.setId(id);
+        directorCache.put(id, director);
+        searchIndex.putDirector(id, director.getName());
+        suggestIndex.putDirector(id, director.getName());
         return  director;
     }
 
@@ -66,11 +90,21 @@ public class DirectorStorage {
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
+        directorCache.invalidate(director.getId());
+        searchIndex.putDirector(director.getId(), director.getName());
+        suggestIndex.putDirector(director.getId(), director.getName());
         return director;
     }
 
     public void delete(long directorId) {
         jdbc.update(DELETE_DIRECTOR, directorId);
         jdbc.update(DELETE_FILMS_DIRECTOR, directorId);
+        directorCache.invalidate(directorId);
+        searchIndex.removeDirector(directorId);
+        suggestIndex.removeDirector(directorId);
+    }
+
+    public CacheStats getCacheStats() {
+        return directorCache.getStats();
     }
 }
@@ -1,49 +1,84 @@
 package ru.yandex.practicum.filmorate.storage.directory;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.ReadThroughCache;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class DirectoryStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<Genre> genreMapper;
     private final RowMapper<Mpa> mpaMapper;
+    private final ReadThroughCache<Long, Genre> genreCache =
+            new ReadThroughCache<>(genre -> genre.toBuilder().build());
+    private final ReadThroughCache<Long, Mpa> mpaCache =
+            new ReadThroughCache<>(mpa -> mpa.toBuilder().build());
 
     private static final String FIND_ALL_GENRES_QUERY = "SELECT * FROM genres order by genre_id";
     private static final String FIND_GENRE_BY_ID_QUERY = "SELECT * FROM genres WHERE genre_id = ?";
     private static final String FIND_ALL_MPA_QUERY = "SELECT * FROM mpa_ratings order by mpa_rating_id";
     private static final String FIND_MPA_BY_ID_QUERY = "SELECT * FROM mpa_ratings WHERE mpa_rating_id = ?";
 
+    @PostConstruct
+    public void loadCache() {
+        findAllGenres();
+        findAllMpa();
+        log.info("Справочники жанров и рейтингов загружены в кэш");
+    }
+
     public Collection<Genre> findAllGenres() {
-        return jdbc.query(FIND_ALL_GENRES_QUERY, genreMapper);
+        List<Genre> genres = jdbc.query(FIND_ALL_GENRES_QUERY, genreMapper);
+        genreCache.putAll(genres.stream().collect(Collectors.toMap(Genre::getId, Function.identity())));
+        return genres;
     }
 
     public Genre findGenreById(long genreId) {
-        try {
-            return jdbc.queryForObject(FIND_GENRE_BY_ID_QUERY, genreMapper, genreId);
-        } catch (EmptyResultDataAccessException ignored) {
-            throw new NotFoundException("Жанр с id = " + genreId + " не найден");
-        }
+        return genreCache.get(genreId, id -> {
+            try {
+                return jdbc.queryForObject(FIND_GENRE_BY_ID_QUERY, genreMapper, id);
+            } catch (EmptyResultDataAccessException ignored) {
+                throw new NotFoundException("Жанр с id = " + id + " не найден");
+            }
+        });
     }
 
     public Collection<Mpa> findAllMpa() {
-        return jdbc.query(FIND_ALL_MPA_QUERY, mpaMapper);
+        List<Mpa> mpa = jdbc.query(FIND_ALL_MPA_QUERY, mpaMapper);
+        mpaCache.putAll(mpa.stream().collect(Collectors.toMap(Mpa::getId, Function.identity())));
+        return mpa;
     }
 
     public Mpa findMpaById(long mpaId) {
-        try {
-            return jdbc.queryForObject(FIND_MPA_BY_ID_QUERY, mpaMapper, mpaId);
-        } catch (EmptyResultDataAccessException ignored) {
-            throw new NotFoundException("Рейтинг с id = " + mpaId + " не найден");
-        }
+        return mpaCache.get(mpaId, id -> {
+            try {
+                return jdbc.queryForObject(FIND_MPA_BY_ID_QUERY, mpaMapper, id);
+            } catch (EmptyResultDataAccessException ignored) {
+                throw new NotFoundException("Рейтинг с id = " + id + " не найден");
+            }
+        });
+    }
+
+    public CacheStats getGenreCacheStats() {
+        return genreCache.getStats();
+    }
+
+    public CacheStats getMpaCacheStats() {
+        return mpaCache.getStats();
     }
 }
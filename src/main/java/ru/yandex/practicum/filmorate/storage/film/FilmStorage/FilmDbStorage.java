@@ -3,27 +3,44 @@ package ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
 import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSuggestIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
 
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,17 +49,25 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class FilmDbStorage implements FilmStorage {
     private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
     private final RowMapper<Film> mapper;
     private final @Qualifier("filmGenresRowMapper") RowMapper<Long> filmGenresRowMapper;
-    private final @Qualifier("filmLikesRowMapper") RowMapper<Long> filmLikesRowMapper;
     private final DirectoryStorage directoryStorage;
     private final UserDbStorage userDbStorage;
     private final DirectorStorage directorStorage;
     private final @Qualifier("filmDirectorsRowMapper") RowMapper<Long> filmDirectorsRowMapper;
     private final FeedDbStorage feedDbStorage;
+    private final LikesIndex likesIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmSuggestIndex suggestIndex;
+    private final @Value("${filmorate.likes.rebuild-on-startup:false}") boolean rebuildLikesCountOnStartup;
 
     private static final String FIND_ALL_QUERY = "SELECT * FROM films";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM films WHERE film_id = ?";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM films WHERE film_id > ? ORDER BY film_id LIMIT ?";
+    private static final String EXPORT_QUERY = "SELECT * FROM films ORDER BY film_id";
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final String EXISTS_BY_ID_QUERY = "SELECT EXISTS (SELECT 1 FROM films WHERE film_id = ?)";
     private static final String INSERT_QUERY = "INSERT INTO films(film_name, description, release_date, " +
             "duration, mpa_rating_id) VALUES (?, ?, ?, ?, ?)";
     private static final String INSERT_FILM_GENRE = "INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?)";
@@ -50,62 +75,116 @@ public class FilmDbStorage implements FilmStorage {
             "duration = ?, mpa_rating_id = ? WHERE film_id = ?";
     private static final String FIND_FILM_GENRES_QUERY = "SELECT genre_id FROM FILM_GENRE WHERE film_id = ? " +
             "ORDER BY genre_id";
-    private static final String ADD_LIKE = "INSERT INTO LIKES (film_id, user_id) " +
-            "VALUES(?, ?)";
+    private static final String ADD_LIKE = "INSERT INTO LIKES (film_id, user_id) VALUES (?, ?)";
+    // повторный лайк того же пользователя не вставляется, чтобы пакет не падал на дубликате
+    private static final String ADD_LIKE_IF_ABSENT = "INSERT INTO LIKES (film_id, user_id) " +
+            "SELECT f.film_id, u.user_id FROM films f, users u " +
+            "WHERE f.film_id = ? AND u.user_id = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM LIKES l WHERE l.film_id = f.film_id AND l.user_id = u.user_id)";
+    private static final String INCREMENT_LIKES_COUNT = "UPDATE films SET likes_count = likes_count + 1 " +
+            "WHERE film_id = ?";
+    private static final String INCREMENT_LIKES_COUNT_BY = "UPDATE films SET likes_count = likes_count + ? " +
+            "WHERE film_id = ?";
+    private static final String FIND_EXISTING_FILM_IDS = "SELECT film_id FROM films WHERE film_id IN (:ids)";
+    private static final String DECREMENT_LIKES_COUNT = "UPDATE films SET likes_count = likes_count - 1 " +
+            "WHERE film_id = ?";
+    private static final String REBUILD_LIKES_COUNT = "UPDATE films f SET likes_count = " +
+            "(SELECT COUNT(*) FROM LIKES l WHERE l.film_id = f.film_id)";
+    private static final String FIND_TOP_FILMS = "SELECT * FROM films " +
+            "ORDER BY likes_count DESC, film_id " +
+            "LIMIT ?";
     private static final String REMOVE_LIKE = "DELETE FROM LIKES " +
             "WHERE film_id = ? and user_id = ?";
-    private static final String GET_LIKES_USERS_BY_FILM_ID = "SELECT user_id FROM LIKES " +
-            "WHERE film_id = ?";
     private static final String DELETE_FILM = "DELETE FROM FILMS WHERE film_id = ?";
     private static final String FIND_FILM_DIRECTORS_QUERY = "SELECT director_id FROM FILM_DIRECTORS " +
             "WHERE film_id = ? " +
             "ORDER BY director_id";
     private static final String INSERT_FILM_DIRECTORS = "INSERT INTO FILM_DIRECTORS (FILM_ID, DIRECTOR_ID)" +
             " VALUES (?, ?)";
-    private static final String DELETE_FILM_DIRECTORS = "DELETE FROM FILM_DIRECTORS " +
-            " WHERE FILM_ID = ?";
+    private static final String DELETE_FILM_DIRECTOR = "DELETE FROM FILM_DIRECTORS " +
+            " WHERE FILM_ID = ? AND DIRECTOR_ID = ?";
     private static final String FIND_FILMS_BY_DIR = "SELECT F.* FROM FILMS F " +
             "JOIN FILM_DIRECTORS FD ON (F.FILM_ID = FD.FILM_ID) " +
             "WHERE FD.DIRECTOR_ID = ? ";
     private static final String FIND_FILMS_BY_ORDER_BY_YEARS = " ORDER BY F.RELEASE_DATE ";
-    private static final String FIND_FILMS_BY_ORDER_BY_LIKES = " ORDER BY (SELECT COUNT(*) " +
-            " FROM LIKES L " +
-            " WHERE L.FILM_ID = F.FILM_ID) DESC";
+    private static final String FIND_FILMS_BY_ORDER_BY_LIKES = " ORDER BY F.LIKES_COUNT DESC, F.FILM_ID";
     private static final String FIND_LIKED_FILMS_IDS = "SELECT film_id FROM likes WHERE user_id = ?";
-    private static final String SEARCH_FILMS_BY = "WITH p AS (SELECT CAST(? AS VARCHAR) as query) " +
-            "SELECT * FROM FILMS F, P WHERE 1 = 1 ";
-    private static final String SEARCH_FILMS_TITLE = " AND lower(F.FILM_NAME) LIKE '%'||lower(p.query)||'%' ";
-    private static final String SEARCH_FILMS_DIR = " EXISTS (SELECT 1 " +
-            " FROM FILM_DIRECTORS FD" +
-            " JOIN DIRECTORS D ON (FD.DIRECTOR_ID = D.DIRECTOR_ID) " +
-            " WHERE FD.FILM_ID = F.FILM_ID " +
-            " AND lower(D.DIRECTOR_NAME ) LIKE '%'||lower(p.query)||'%') ";
     private static final String FIND_FILM_IDS_BY_GENRE =
-            "SELECT FILM_ID FROM FILM_GENRE WHERE GENRE_ID = ?";
+            "SELECT f.FILM_ID FROM FILMS f " +
+                    "JOIN FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID " +
+                    "WHERE fg.GENRE_ID = ? " +
+                    "ORDER BY f.LIKES_COUNT DESC, f.FILM_ID " +
+                    "LIMIT ?";
 
+    // год задается диапазоном дат, чтобы поиск шел по индексу FILMS_RELEASE_DATE_IDX
     private static final String FIND_FILM_IDS_BY_YEAR =
-            "SELECT FILM_ID FROM FILMS WHERE EXTRACT(YEAR FROM RELEASE_DATE) = ?";
+            "SELECT FILM_ID FROM FILMS WHERE RELEASE_DATE >= ? AND RELEASE_DATE < ? " +
+                    "ORDER BY LIKES_COUNT DESC, FILM_ID " +
+                    "LIMIT ?";
 
     private static final String FIND_FILM_IDS_BY_GENRE_AND_YEAR =
             "SELECT f.FILM_ID FROM FILMS f " +
                     "JOIN FILM_GENRE fg ON f.FILM_ID = fg.FILM_ID " +
-                    "WHERE fg.GENRE_ID = ? AND EXTRACT(YEAR FROM f.RELEASE_DATE) = ?";
-    private static final String DELETE_FILM_GENRES = "DELETE FROM FILM_GENRE " +
-            " WHERE FILM_ID = ?";
+                    "WHERE fg.GENRE_ID = ? AND f.RELEASE_DATE >= ? AND f.RELEASE_DATE < ? " +
+                    "ORDER BY f.LIKES_COUNT DESC, f.FILM_ID " +
+                    "LIMIT ?";
+    private static final String DELETE_FILM_GENRE = "DELETE FROM FILM_GENRE " +
+            " WHERE FILM_ID = ? AND GENRE_ID = ?";
+    // запросы пакетной загрузки связанных данных сразу для набора фильмов
+    private static final int HYDRATION_CHUNK_SIZE = 1000;
+    private static final String FIND_FILMS_BY_IDS = "SELECT * FROM films WHERE film_id IN (:ids)";
+    // наименования жанров, рейтингов и режиссеров берутся из кэша справочников
+    private static final String FIND_GENRES_BY_FILM_IDS = "SELECT film_id, genre_id FROM FILM_GENRE " +
+            "WHERE film_id IN (:ids)";
+    private static final String FIND_DIRECTORS_BY_FILM_IDS = "SELECT film_id, director_id FROM FILM_DIRECTORS " +
+            "WHERE film_id IN (:ids)";
+    private static final String FIND_LIKES_BY_FILM_IDS = "SELECT film_id, user_id FROM LIKES " +
+            "WHERE film_id IN (:ids)";
 
     @Override
     public Collection<Film> findAll() {
-        Collection<Film> films = jdbc.query(FIND_ALL_QUERY, mapper);
-        for (Film film : films) {
-            addAdditionalFields(film);
-            addLikes(film);
+        List<Film> films = jdbc.query(FIND_ALL_QUERY, mapper);
+        hydrate(films);
+        return films;
+    }
+
+    /**
+     * Читает все фильмы курсором и передает их пачками по HYDRATION_CHUNK_SIZE уже с жанрами,
+     * режиссерами и лайками. В памяти одновременно держится только одна пачка.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAll(Consumer<List<Film>> chunkConsumer) {
+        List<Film> chunk = new ArrayList<>(HYDRATION_CHUNK_SIZE);
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(EXPORT_QUERY);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(mapper.mapRow(rs, rs.getRow()));
+            if (chunk.size() == HYDRATION_CHUNK_SIZE) {
+                hydrate(chunk);
+                chunkConsumer.accept(chunk);
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty()) {
+            hydrate(chunk);
+            chunkConsumer.accept(chunk);
         }
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        List<Film> films = jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+        hydrate(films);
         return films;
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
-        addAdditionalFields(film);
+        resolveReferences(film);
 
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(connection -> {
@@ -127,48 +206,90 @@ public class FilmDbStorage implements FilmStorage {
         }
 
         film.setId(id);
+        batchUpdateLinks(INSERT_FILM_GENRE, id, genreIds(film));
+        batchUpdateLinks(INSERT_FILM_DIRECTORS, id, directorIds(film));
+        indexFilm(id, film.getName(), directorIds(film));
+        return film;
+    }
 
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                jdbc.update(INSERT_FILM_GENRE, film.getId(), genre.getId());
-            }
+    /**
+     * Сохраняет набор фильмов пакетными запросами: одна вставка в FILMS и по одной в FILM_GENRE
+     * и FILM_DIRECTORS на весь набор. Транзакцией управляет вызывающий код.
+     */
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        for (Film film : films) {
+            resolveReferences(film);
         }
 
-        if (film.getDirectors() != null) {
-            for (Director director : film.getDirectors()) {
-                jdbc.update(INSERT_FILM_DIRECTORS, film.getId(), director.getId());
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setInt(4, film.getDuration());
+                        ps.setLong(5, film.getMpa().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != films.size()) {
+            throw new InternalServerException("Не удалось сохранить данные");
+        }
+        List<Object[]> genreArgs = new ArrayList<>();
+        List<Object[]> directorArgs = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(extractFilmId(keys.get(i)));
+            for (Long genreId : genreIds(film)) {
+                genreArgs.add(new Object[]{film.getId(), genreId});
             }
+            for (Long directorId : directorIds(film)) {
+                directorArgs.add(new Object[]{film.getId(), directorId});
+            }
+        }
+        if (!genreArgs.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRE, genreArgs);
         }
+        if (!directorArgs.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_DIRECTORS, directorArgs);
+        }
+        for (Film film : films) {
+            indexFilm(film.getId(), film.getName(), directorIds(film));
+        }
+        return films;
+    }
 
-        return film;
+    // в зависимости от драйвера ключи приходят только с FILM_ID или со всеми столбцами строки
+    private static Long extractFilmId(Map<String, Object> key) {
+        Object id = key.entrySet().stream()
+                .filter(entry -> entry.getKey().equalsIgnoreCase("film_id"))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElseGet(() -> key.values().iterator().next());
+        return ((Number) id).longValue();
     }
 
-    private void addAdditionalFields(Film film) {
+    /**
+     * Подставляет рейтинг, жанры и режиссеров из кэша справочников.
+     * Несуществующие id приводят к NotFoundException до каких-либо изменений в БД.
+     */
+    private void resolveReferences(Film film) {
         if (film.getMpa() != null && film.getMpa().getId() != 0) {
             film.setMpa(directoryStorage.findMpaById(film.getMpa().getId()));
         }
-
-        //заполняем ID сущностей из БД при обновлении
-        if (film.getId() != null) {
-            Set<Long> genreIds = findGenresByFilmId(film.getId());
-            if (genreIds != null) {
-                Set<Genre> genres = new HashSet<>();
-                for (Long genreId : genreIds) {
-                    genres.add(Genre.builder().id(genreId).build());
-                }
-                film.setGenres(genres);
-            }
-            Set<Long> directorIds = findDirectorsByFilmId(film.getId());
-            if (directorIds != null) {
-                Set<Director> directors = new HashSet<>();
-                for (Long directorId : directorIds) {
-                    directors.add(Director.builder().id(directorId).build());
-                }
-                film.setDirectors(directors);
-            }
-        }
-
-        //Обогащаем сущности наименованиями и при создании и приобновлении
         if (film.getGenres() != null) {
             TreeSet<Genre> genres = new TreeSet<>(Comparator.comparingLong(Genre::getId));
             for (Genre genre : film.getGenres()) {
@@ -185,25 +306,98 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
-    private void addLikes(Film film) {
-        if (film.getId() != null) {
-            Set<Long> usersLikes = new HashSet<>();
-            try {
-                usersLikes = new HashSet<>(jdbc.query(GET_LIKES_USERS_BY_FILM_ID,
-                        new Object[]{film.getId()},
-                        filmLikesRowMapper));
-            } catch (EmptyResultDataAccessException ignored) {
-                log.info("У фильма с id = {} нет лайков", film.getId());
-            }
+    private static Set<Long> genreIds(Film film) {
+        if (film.getGenres() == null) {
+            return new HashSet<>();
+        }
+        return film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+    }
 
-            if (usersLikes != null) {
-                film.setLikes(usersLikes);
+    private static Set<Long> directorIds(Film film) {
+        if (film.getDirectors() == null) {
+            return new HashSet<>();
+        }
+        return film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Выполняет запрос вида (FILM_ID, <id связи>) одним пакетом для всех переданных id.
+     */
+    private void batchUpdateLinks(String sql, long filmId, Collection<Long> linkIds) {
+        if (linkIds.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Long linkId : linkIds) {
+            batchArgs.add(new Object[]{filmId, linkId});
+        }
+        jdbc.batchUpdate(sql, batchArgs);
+    }
+
+    /**
+     * Приводит связи фильма к целевому набору: удаляет только исчезнувшие и добавляет только новые id.
+     */
+    private void applyLinksDiff(String deleteSql, String insertSql, long filmId,
+                                Set<Long> currentIds, Set<Long> targetIds) {
+        Set<Long> removed = new HashSet<>(currentIds);
+        removed.removeAll(targetIds);
+        Set<Long> added = new HashSet<>(targetIds);
+        added.removeAll(currentIds);
+        batchUpdateLinks(deleteSql, filmId, removed);
+        batchUpdateLinks(insertSql, filmId, added);
+    }
+
+    /**
+     * Заполняет рейтинг, жанры, режиссеров и лайки сразу для всего набора фильмов.
+     * Справочные данные берутся из кэша, к БД идут только запросы связей и лайков.
+     * Количество запросов не зависит от числа фильмов в пределах HYDRATION_CHUNK_SIZE.
+     */
+    private void hydrate(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            film.setGenres(new TreeSet<>(Comparator.comparingLong(Genre::getId)));
+            film.setDirectors(new TreeSet<>(Comparator.comparingLong(Director::getId)));
+            film.setLikes(new HashSet<>());
+            filmsById.put(film.getId(), film);
+        }
+
+        for (Film film : films) {
+            if (film.getMpa() != null) {
+                film.setMpa(directoryStorage.findMpaById(film.getMpa().getId()));
             }
         }
+
+        for (List<Long> chunk : partition(new ArrayList<>(filmsById.keySet()))) {
+            MapSqlParameterSource params = new MapSqlParameterSource("ids", chunk);
+            namedJdbc.query(FIND_GENRES_BY_FILM_IDS, params, rs -> {
+                filmsById.get(rs.getLong("film_id")).getGenres()
+                        .add(directoryStorage.findGenreById(rs.getLong("genre_id")));
+            });
+            namedJdbc.query(FIND_DIRECTORS_BY_FILM_IDS, params, rs -> {
+                filmsById.get(rs.getLong("film_id")).getDirectors()
+                        .add(directorStorage.findDirectorById(rs.getLong("director_id")));
+            });
+            namedJdbc.query(FIND_LIKES_BY_FILM_IDS, params, rs -> {
+                filmsById.get(rs.getLong("film_id")).getLikes().add(rs.getLong("user_id"));
+            });
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> list) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += HYDRATION_CHUNK_SIZE) {
+            chunks.add(list.subList(from, Math.min(from + HYDRATION_CHUNK_SIZE, list.size())));
+        }
+        return chunks;
     }
 
     @Override
+    @Transactional
     public Film update(Film newFilm) {
+        resolveReferences(newFilm);
         int rowsUpdated = jdbc.update(UPDATE_QUERY,
                 newFilm.getName(),
                 newFilm.getDescription(),
@@ -214,66 +408,170 @@ public class FilmDbStorage implements FilmStorage {
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
-        Set<Genre> newGenres = newFilm.getGenres();
-        Set<Director> newDirectors = newFilm.getDirectors();
-        addAdditionalFields(newFilm);
-
-        /* проверяем были ли изменения жанров между тем что прилетело в запросе и что есть в БД
-           если да, то обновляем их */
-        if (!newFilm.getGenres().equals(newGenres)) {
-            jdbc.update(DELETE_FILM_GENRES, newFilm.getId());
-            if (newGenres != null) {
-                for (Genre genre : newGenres) {
-                    jdbc.update(INSERT_FILM_GENRE, newFilm.getId(), genre.getId());
-                }
-            }
-            //обновим поля
-            addAdditionalFields(newFilm);
-        }
-
-        /* проверяем были ли изменения режиссеров между тем что прилетело в запросе и что есть в БД
-           если да, то обновляем их */
-        if (!newFilm.getDirectors().equals(newDirectors)) {
-            jdbc.update(DELETE_FILM_DIRECTORS, newFilm.getId());
-            if (newDirectors != null) {
-                for (Director director : newDirectors) {
-                    jdbc.update(INSERT_FILM_DIRECTORS, newFilm.getId(), director.getId());
-                }
-            }
-            //обновим поля
-            addAdditionalFields(newFilm);
+
+        // отсутствующие в запросе жанры и режиссеры означают, что у фильма их больше нет
+        applyLinksDiff(DELETE_FILM_GENRE, INSERT_FILM_GENRE, newFilm.getId(),
+                findGenresByFilmId(newFilm.getId()), genreIds(newFilm));
+        applyLinksDiff(DELETE_FILM_DIRECTOR, INSERT_FILM_DIRECTORS, newFilm.getId(),
+                findDirectorsByFilmId(newFilm.getId()), directorIds(newFilm));
+        indexFilm(newFilm.getId(), newFilm.getName(), directorIds(newFilm));
+
+        // результат собирается из запроса и кэша справочников без повторного чтения фильма
+        if (newFilm.getGenres() == null) {
+            newFilm.setGenres(new TreeSet<>(Comparator.comparingLong(Genre::getId)));
+        }
+        if (newFilm.getDirectors() == null) {
+            newFilm.setDirectors(new TreeSet<>(Comparator.comparingLong(Director::getId)));
         }
         return newFilm;
     }
 
+    @Override
+    public boolean existsById(long filmId) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(EXISTS_BY_ID_QUERY, Boolean.class, filmId));
+    }
+
     @Override
     public Film findFilmById(long filmId) {
         try {
             Film film = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, filmId);
-            addAdditionalFields(film);
-            addLikes(film);
+            hydrate(List.of(film));
             return film;
         } catch (EmptyResultDataAccessException ignored) {
             throw new NotFoundException("Фильм с id = " + filmId + " не найден");
         }
     }
 
-@Override
-public void addLike(long filmId, long userId) {
-    Film film = findFilmById(filmId);
-    User user = userDbStorage.findUserById(userId);
+    @Override
+    @Transactional
+    public void addLike(long filmId, long userId) {
+        // существование фильма и пользователя проверяют внешние ключи LIKES, повтор отсекает UNIQUE
+        boolean added;
+        try {
+            added = jdbc.update(ADD_LIKE, filmId, userId) > 0;
+        } catch (DuplicateKeyException ignored) {
+            added = false;
+        } catch (DataIntegrityViolationException e) {
+            throw notFoundFilmOrUser(filmId, userId);
+        }
+        // повторный лайк ничего не меняет: ни счетчика, ни события в ленте
+        if (added) {
+            jdbc.update(INCREMENT_LIKES_COUNT, filmId);
+            feedDbStorage.createFeed(userId, filmId, EventType.LIKE, Operation.ADD);
+            AfterCommit.run(() -> {
+                likesIndex.addLike(userId, filmId);
+                suggestIndex.changeLikes(filmId, 1);
+            });
+        }
+    }
+
+    @Override
+    public Set<Long> findExistingFilmIds(Collection<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        for (List<Long> chunk : partition(new ArrayList<>(new HashSet<>(ids)))) {
+            existing.addAll(namedJdbc.queryForList(FIND_EXISTING_FILM_IDS,
+                    new MapSqlParameterSource("ids", chunk), Long.class));
+        }
+        return existing;
+    }
 
-    jdbc.update(ADD_LIKE, film.getId(), user.getId());
-    feedDbStorage.createFeed(userId, filmId, EventType.LIKE, Operation.ADD);
-}
+    /**
+     * Добавляет набор лайков пакетными запросами. Уже существующие лайки пропускаются,
+     * счетчики фильмов и лента обновляются только по реально добавленным.
+     * Существование фильмов и пользователей проверяет вызывающий код.
+     */
+    @Override
+    @Transactional
+    public List<Like> addLikes(List<Like> likes) {
+        List<Like> added = new ArrayList<>();
+        if (likes.isEmpty()) {
+            return added;
+        }
+        List<Object[]> likeArgs = new ArrayList<>();
+        for (Like like : likes) {
+            likeArgs.add(new Object[]{like.getFilmId(), like.getUserId()});
+        }
+        int[] inserted = jdbc.batchUpdate(ADD_LIKE_IF_ABSENT, likeArgs);
+
+        Map<Long, Integer> addedByFilm = new HashMap<>();
+        List<Feed> feeds = new ArrayList<>();
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < likes.size(); i++) {
+            if (inserted[i] <= 0) {
+                continue;
+            }
+            Like like = likes.get(i);
+            added.add(like);
+            addedByFilm.merge(like.getFilmId(), 1, Integer::sum);
+            feeds.add(Feed.builder()
+                    .timestamp(timestamp)
+                    .userId(like.getUserId())
+                    .entityId(like.getFilmId())
+                    .eventType(EventType.LIKE)
+                    .operation(Operation.ADD)
+                    .build());
+        }
+        if (!addedByFilm.isEmpty()) {
+            List<Object[]> countArgs = new ArrayList<>();
+            addedByFilm.forEach((filmId, count) -> countArgs.add(new Object[]{count, filmId}));
+            jdbc.batchUpdate(INCREMENT_LIKES_COUNT_BY, countArgs);
+        }
+        feedDbStorage.createFeeds(feeds);
+        AfterCommit.run(() -> {
+            for (Like like : added) {
+                likesIndex.addLike(like.getUserId(), like.getFilmId());
+            }
+            addedByFilm.forEach(suggestIndex::changeLikes);
+        });
+        return added;
+    }
 
     @Override
+    @Transactional
     public void removeLike(long filmId, long userId) {
-        Film film = findFilmById(filmId);
-        User user = userDbStorage.findUserById(userId);
-
-        jdbc.update(REMOVE_LIKE, film.getId(), user.getId());
+        if (jdbc.update(REMOVE_LIKE, filmId, userId) == 0) {
+            // id проверяются только когда удалять было нечего, события в ленте при этом нет
+            if (!existsById(filmId) || !userDbStorage.existsById(userId)) {
+                throw notFoundFilmOrUser(filmId, userId);
+            }
+            return;
+        }
+        jdbc.update(DECREMENT_LIKES_COUNT, filmId);
         feedDbStorage.createFeed(userId, filmId, EventType.LIKE, Operation.REMOVE);
+        AfterCommit.run(() -> {
+            likesIndex.removeLike(userId, filmId);
+            suggestIndex.changeLikes(filmId, -1);
+        });
+    }
+
+    private NotFoundException notFoundFilmOrUser(long filmId, long userId) {
+        if (!existsById(filmId)) {
+            return new NotFoundException("Фильм с id = " + filmId + " не найден");
+        }
+        return new NotFoundException("Пользователь с id = " + userId + " не найден");
+    }
+
+    @Override
+    public Collection<Film> findTopFilms(long count) {
+        List<Film> films = jdbc.query(FIND_TOP_FILMS, mapper, count);
+        hydrate(films);
+        return films;
+    }
+
+    /**
+     * Пересчитывает счетчики лайков фильмов по таблице LIKES.
+     */
+    public void rebuildLikesCount() {
+        int films = jdbc.update(REBUILD_LIKES_COUNT);
+        log.info("Счетчики лайков пересчитаны для {} фильмов", films);
+        suggestIndex.load();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildLikesCountOnStartup() {
+        if (rebuildLikesCountOnStartup) {
+            rebuildLikesCount();
+        }
     }
 
     @Override
@@ -283,28 +581,27 @@ public void addLike(long filmId, long userId) {
             log.error("Попытка получить несуществующий фильм");
             throw new NotFoundException("Фильм с ID " + id + " не найден");
         }
+        AfterCommit.run(() -> {
+            likesIndex.removeFilm(id);
+            searchIndex.removeFilm(id);
+            suggestIndex.removeFilm(id);
+        });
+    }
+
+    // индексы в памяти меняются только после фиксации, иначе откат оставил бы в поиске несуществующий фильм
+    private void indexFilm(long filmId, String name, Set<Long> directorIds) {
+        AfterCommit.run(() -> {
+            searchIndex.putFilm(filmId, name, directorIds);
+            suggestIndex.putFilm(filmId, name, directorIds);
+        });
     }
 
     private Set<Long> findGenresByFilmId(Long filmId) {
-        try {
-            return new HashSet<>(jdbc.query(FIND_FILM_GENRES_QUERY,
-                    new Object[]{filmId},
-                    filmGenresRowMapper));
-        } catch (EmptyResultDataAccessException ignored) {
-            log.info("У фильма с id = {} нет жанров", filmId);
-            return null;
-        }
+        return new HashSet<>(jdbc.query(FIND_FILM_GENRES_QUERY, filmGenresRowMapper, filmId));
     }
 
     private Set<Long> findDirectorsByFilmId(Long filmId) {
-        try {
-            return new HashSet<>(jdbc.query(FIND_FILM_DIRECTORS_QUERY,
-                    new Object[]{filmId},
-                    filmDirectorsRowMapper));
-        } catch (EmptyResultDataAccessException ignored) {
-            log.info("У фильма с id = {} нет режиссеров", filmId);
-            return null;
-        }
+        return new HashSet<>(jdbc.query(FIND_FILM_DIRECTORS_QUERY, filmDirectorsRowMapper, filmId));
     }
 
     @Override
@@ -316,88 +613,92 @@ public void addLike(long filmId, long userId) {
             sql += FIND_FILMS_BY_ORDER_BY_LIKES;
         }
 
-        Collection<Film> films = new ArrayList<>(jdbc.query(sql, new Object[]{directorId}, mapper));
+        List<Film> films = jdbc.query(sql, mapper, directorId);
         if (films.isEmpty()) {
             throw new NotFoundException("Фильмов не найдено");
         }
-        for (Film film : films) {
-            addAdditionalFields(film);
-            addLikes(film);
-        }
+        hydrate(films);
         return films;
     }
 
     public Collection<Film> getLikedFilms(long userId) {
         // 1. Получаем ID лайкнутых фильмов
         List<Long> filmIds = jdbc.queryForList(FIND_LIKED_FILMS_IDS, Long.class, userId);
-        // 2. Для каждого ID получаем полные данные о фильме
-        Collection<Film> likedFilms = new HashSet<>();
-        for (Long filmId : filmIds) {
-            try {
-                Film film = findFilmById(filmId); // Используем уже готовый метод
-                likedFilms.add(film);
-            } catch (NotFoundException e) {
-                log.warn("Фильм с ID {} был лайкнут, но не найден в БД", filmId);
-            }
-        }
-        return likedFilms;
+        // 2. Получаем полные данные сразу по всем фильмам
+        return new HashSet<>(convertIdsToFilms(filmIds));
     }
 
+    /**
+     * Поиск по подстроке в названии и/или имени режиссера через индекс триграмм.
+     * Порядок: релевантность совпадения плюс популярность, нормированная по лучшему фильму выборки.
+     */
     public Collection<Film> searchFilmsByQuery(String query, String by) {
-        String sql = SEARCH_FILMS_BY;
-        if (by.equals("title")) {
-            sql += SEARCH_FILMS_TITLE;
-        } else if (by.equals("director")) {
-            sql += " AND " + SEARCH_FILMS_DIR;
-        } else if (by.contains("director") && by.contains("title")) {
-            sql += SEARCH_FILMS_TITLE + " OR " + SEARCH_FILMS_DIR;
-        } else {
+        boolean byTitle = by.contains("title");
+        boolean byDirector = by.contains("director");
+        if (!byTitle && !byDirector) {
             throw new InternalServerException("Неверные параметры поиска. Допускается: director, title");
         }
-        sql += FIND_FILMS_BY_ORDER_BY_LIKES;
-        Collection<Film> films = new ArrayList<>(jdbc.query(sql, new String[]{query}, mapper));
+        Map<Long, Double> relevance = searchIndex.search(query, byTitle, byDirector);
+        List<Film> films = convertIdsToFilms(new ArrayList<>(relevance.keySet()));
+        double maxPopularity = films.stream()
+                .mapToDouble(film -> Math.log1p(film.getLikes().size()))
+                .max()
+                .orElse(0);
+        Map<Long, Double> scores = new HashMap<>();
         for (Film film : films) {
-            addAdditionalFields(film);
-            addLikes(film);
+            double popularity = maxPopularity == 0 ? 0 : Math.log1p(film.getLikes().size()) / maxPopularity;
+            scores.put(film.getId(), relevance.get(film.getId()) + popularity);
         }
+        films.sort(Comparator.<Film>comparingDouble(film -> scores.get(film.getId())).reversed()
+                .thenComparing(Film::getId));
         return films;
     }
 
     @Override
-    public Collection<Film> findFilmsByYear(int year) {
+    public Collection<Film> findFilmsByYear(int year, long count) {
         List<Long> filmIds = jdbc.queryForList(
                 FIND_FILM_IDS_BY_YEAR,
-                Long.class, year);
+                Long.class, LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1), count);
         return convertIdsToFilms(filmIds);
     }
 
-   @Override
-   public Collection<Film> findFilmsByGenre(long genreId) {
+    @Override
+    public Collection<Film> findFilmsByGenre(long genreId, long count) {
         List<Long> filmIds = jdbc.queryForList(
                 FIND_FILM_IDS_BY_GENRE,
-                Long.class, genreId);
+                Long.class, genreId, count);
         return convertIdsToFilms(filmIds);
     }
 
     @Override
-    public Collection<Film> findFilmsByGenreAndYear(long genreId, Integer year) {
+    public Collection<Film> findFilmsByGenreAndYear(long genreId, Integer year, long count) {
         List<Long> filmIds = jdbc.queryForList(
                 FIND_FILM_IDS_BY_GENRE_AND_YEAR,
-                Long.class, genreId, year);
+                Long.class, genreId, LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1), count);
         return convertIdsToFilms(filmIds);
     }
 
 
 
-    private Collection<Film> convertIdsToFilms(List<Long> filmIds) {
-        return filmIds.stream()
-                .map(this::findFilmById)
+    @Override
+    public Collection<Film> findFilmsByIds(List<Long> ids) {
+        return convertIdsToFilms(ids);
+    }
+
+    private List<Film> convertIdsToFilms(List<Long> filmIds) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (List<Long> chunk : partition(filmIds.stream().distinct().collect(Collectors.toList()))) {
+            for (Film film : namedJdbc.query(FIND_FILMS_BY_IDS, new MapSqlParameterSource("ids", chunk), mapper)) {
+                filmsById.put(film.getId(), film);
+            }
+        }
+        // сохраняем порядок исходного списка id
+        List<Film> films = filmIds.stream()
+                .map(filmsById::get)
                 .filter(Objects::nonNull)
-                .peek(film -> {
-                addAdditionalFields(film);
-                addLikes(film);
-                })
                 .collect(Collectors.toList());
+        hydrate(films);
+        return films;
     }
 
 }
@@ -1,35 +1,55 @@
 package ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     public Collection<Film> findAll();
 
+    public List<Film> findPage(long afterId, int limit);
+
+    public void exportAll(Consumer<List<Film>> chunkConsumer);
+
     public Film create(Film film);
 
+    public List<Film> createAll(List<Film> films);
+
     public Film update(Film newFilm);
 
     public Film findFilmById(long id);
 
+    public boolean existsById(long id);
+
     public void addLike(long filmId, long userId);
 
     public void removeLike(long filmId, long userId);
 
+    public Set<Long> findExistingFilmIds(Collection<Long> ids);
+
+    public List<Like> addLikes(List<Like> likes);
+
     public Collection<Film> findFilmsByDirectorId(long directorId, String sortBy);
 
     public void deleteFilm(long id);
 
     public Collection<Film> getLikedFilms(long userId);
 
+    public Collection<Film> findFilmsByIds(List<Long> ids);
+
     public Collection<Film> searchFilmsByQuery(String query, String by);
 
-    public Collection<Film> findFilmsByYear(int year);
+    public Collection<Film> findTopFilms(long count);
+
+    public Collection<Film> findFilmsByYear(int year, long count);
 
-    public Collection<Film> findFilmsByGenre(long genreId);
+    public Collection<Film> findFilmsByGenre(long genreId, long count);
 
-    public Collection<Film> findFilmsByGenreAndYear(long genreId, Integer year);
+    public Collection<Film> findFilmsByGenreAndYear(long genreId, Integer year, long count);
 
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package ru.yandex.practicum.filmorate.storage.friends;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Граф дружбы по таблице FRIENDSHIPS в виде отсортированных массивов id.
+ * friends - кого пользователь добавил в друзья, followers - кто добавил пользователя.
+ * Массивы не изменяются после публикации, поэтому читать их можно без блокировок.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FriendshipIndex {
+    private static final long[] NO_USERS = new long[0];
+    private static final String FIND_ALL_FRIENDSHIPS = "SELECT user_id, friend_id FROM friendships";
+
+    private final JdbcTemplate jdbc;
+    private final Map<Long, long[]> friends = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> followers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        Map<Long, List<Long>> friendLists = new HashMap<>();
+        Map<Long, List<Long>> followerLists = new HashMap<>();
+        jdbc.query(FIND_ALL_FRIENDSHIPS, rs -> {
+            long userId = rs.getLong("user_id");
+            long friendId = rs.getLong("friend_id");
+            friendLists.computeIfAbsent(userId, id -> new ArrayList<>()).add(friendId);
+            followerLists.computeIfAbsent(friendId, id -> new ArrayList<>()).add(userId);
+        });
+        friends.clear();
+        followers.clear();
+        friendLists.forEach((userId, ids) -> friends.put(userId, toSortedArray(ids)));
+        followerLists.forEach((userId, ids) -> followers.put(userId, toSortedArray(ids)));
+        log.info("Граф дружбы построен для {} пользователей", friends.size());
+    }
+
+    public long[] getFriends(long userId) {
+        return friends.getOrDefault(userId, NO_USERS);
+    }
+
+    public long[] getFollowers(long userId) {
+        return followers.getOrDefault(userId, NO_USERS);
+    }
+
+    public long[] getCommonFriends(long userId, long otherId) {
+        return intersection(getFriends(userId), getFriends(otherId));
+    }
+
+    public void addFriend(long userId, long friendId) {
+        friends.compute(userId, (id, ids) -> insert(ids == null ? NO_USERS : ids, friendId));
+        followers.compute(friendId, (id, ids) -> insert(ids == null ? NO_USERS : ids, userId));
+    }
+
+    public void removeFriend(long userId, long friendId) {
+        friends.computeIfPresent(userId, (id, ids) -> remove(ids, friendId));
+        followers.computeIfPresent(friendId, (id, ids) -> remove(ids, userId));
+    }
+
+    public void removeUser(long userId) {
+        long[] userFriends = friends.remove(userId);
+        if (userFriends != null) {
+            for (long friendId : userFriends) {
+                followers.computeIfPresent(friendId, (id, ids) -> remove(ids, userId));
+            }
+        }
+        long[] userFollowers = followers.remove(userId);
+        if (userFollowers != null) {
+            for (long followerId : userFollowers) {
+                friends.computeIfPresent(followerId, (id, ids) -> remove(ids, userId));
+            }
+        }
+    }
+
+    /**
+     * Пересечение двух отсортированных массивов слиянием.
+     */
+    public static long[] intersection(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long[] toSortedArray(List<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).distinct().sorted().toArray();
+    }
+
+    private static long[] insert(long[] ids, long value) {
+        int position = Arrays.binarySearch(ids, value);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+        return result;
+    }
+
+    private static long[] remove(long[] ids, long value) {
+        int position = Arrays.binarySearch(ids, value);
+        if (position < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        System.arraycopy(ids, position + 1, result, position, ids.length - position - 1);
+        return result;
+    }
+}
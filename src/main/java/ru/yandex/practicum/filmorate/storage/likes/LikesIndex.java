@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage.likes;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Разреженная матрица пользователь -> фильмы по таблице LIKES.
+ * Для каждого пользователя хранится отсортированный массив id лайкнутых фильмов,
+ * массив не изменяется после публикации, поэтому читать его можно без блокировок.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikesIndex {
+    private static final long[] NO_FILMS = new long[0];
+    private static final String FIND_ALL_LIKES = "SELECT user_id, film_id FROM likes ORDER BY user_id, film_id";
+
+    private final JdbcTemplate jdbc;
+    private final Map<Long, long[]> filmsByUser = new ConcurrentHashMap<>();
+    // номер версии лайков пользователя, увеличивается при каждом изменении
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        Map<Long, List<Long>> likes = new HashMap<>();
+        jdbc.query(FIND_ALL_LIKES, rs -> {
+            likes.computeIfAbsent(rs.getLong("user_id"), id -> new ArrayList<>())
+                    .add(rs.getLong("film_id"));
+        });
+        filmsByUser.clear();
+        likes.forEach((userId, films) -> filmsByUser.put(userId,
+                films.stream().mapToLong(Long::longValue).distinct().sorted().toArray()));
+        log.info("Индекс лайков построен для {} пользователей", filmsByUser.size());
+    }
+
+    public long[] getLikedFilms(long userId) {
+        return filmsByUser.getOrDefault(userId, NO_FILMS);
+    }
+
+    public Map<Long, long[]> getAllLikes() {
+        return Collections.unmodifiableMap(filmsByUser);
+    }
+
+    public long getVersion(long userId) {
+        return versions.getOrDefault(userId, 0L);
+    }
+
+    public void addLike(long userId, long filmId) {
+        filmsByUser.compute(userId, (id, films) -> insert(films == null ? NO_FILMS : films, filmId));
+        touch(userId);
+    }
+
+    public void removeLike(long userId, long filmId) {
+        filmsByUser.computeIfPresent(userId, (id, films) -> remove(films, filmId));
+        touch(userId);
+    }
+
+    public void removeUser(long userId) {
+        filmsByUser.remove(userId);
+        // версия остается и увеличивается: у лайков, прочитанных при старте, версия 0, и без увеличения
+        // снимки рекомендаций, где удаленный пользователь был соседом, считались бы действительными
+        touch(userId);
+    }
+
+    public void removeFilm(long filmId) {
+        for (Long userId : filmsByUser.keySet()) {
+            long[] films = filmsByUser.get(userId);
+            if (films != null && Arrays.binarySearch(films, filmId) >= 0) {
+                filmsByUser.computeIfPresent(userId, (id, current) -> remove(current, filmId));
+                touch(userId);
+            }
+        }
+    }
+
+    // версия увеличивается после замены массива, на этот порядок опираются снимки рекомендаций
+    private void touch(long userId) {
+        versions.merge(userId, 1L, Long::sum);
+    }
+
+    /**
+     * Размер пересечения двух отсортированных массивов.
+     */
+    public static int intersectionSize(long[] first, long[] second) {
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Элементы первого отсортированного массива, которых нет во втором.
+     */
+    public static long[] difference(long[] first, long[] second) {
+        long[] result = new long[first.length];
+        int size = 0;
+        int j = 0;
+        for (long value : first) {
+            while (j < second.length && second[j] < value) {
+                j++;
+            }
+            if (j == second.length || second[j] != value) {
+                result[size++] = value;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long[] insert(long[] films, long film) {
+        int position = Arrays.binarySearch(films, film);
+        if (position >= 0) {
+            return films;
+        }
+        position = -position - 1;
+        long[] result = new long[films.length + 1];
+        System.arraycopy(films, 0, result, 0, position);
+        result[position] = film;
+        System.arraycopy(films, position, result, position + 1, films.length - position);
+        return result;
+    }
+
+    private static long[] remove(long[] films, long film) {
+        int position = Arrays.binarySearch(films, film);
+        if (position < 0) {
+            return films;
+        }
+        if (films.length == 1) {
+            return null;
+        }
+        long[] result = new long[films.length - 1];
+        System.arraycopy(films, 0, result, 0, position);
+        System.arraycopy(films, position + 1, result, position, films.length - position - 1);
+        return result;
+    }
+}
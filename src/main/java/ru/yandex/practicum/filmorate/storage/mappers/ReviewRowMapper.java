@@ -18,7 +18,7 @@ public class ReviewRowMapper implements RowMapper<Review> {
                 .isPositive(resultSet.getBoolean("is_positive"))
                 .filmId(resultSet.getLong("film_id"))
                 .userId(resultSet.getLong("user_id"))
-                .useful(resultSet.getInt("likes_count") - resultSet.getInt("dislikes_count"))
+                .useful(resultSet.getInt("useful"))
                 .build();
     }
 }
@@ -0,0 +1,258 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс по триграммам названий фильмов и имен режиссеров для поиска по подстроке.
+ * Кандидаты находятся пересечением списков триграмм запроса и затем проверяются на вхождение
+ * подстроки целиком. Запросы короче триграммы проверяются перебором строк в памяти.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    private static final int GRAM = 3;
+    private static final String FIND_FILMS = "SELECT film_id, film_name FROM films";
+    private static final String FIND_DIRECTORS = "SELECT director_id, director_name FROM directors";
+    private static final String FIND_FILM_DIRECTORS = "SELECT film_id, director_id FROM film_directors";
+
+    // релевантность совпадения: полное, с начала строки, с начала слова, в середине слова
+    static final double EXACT = 1.0;
+    static final double PREFIX = 0.5;
+    static final double WORD_PREFIX = 0.25;
+    static final double SUBSTRING = 0.0;
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> titles = new HashMap<>();
+    private final Map<String, Set<Long>> titleGrams = new HashMap<>();
+    private final Map<Long, String> directorNames = new HashMap<>();
+    private final Map<String, Set<Long>> directorGrams = new HashMap<>();
+    private final Map<Long, Set<Long>> filmsByDirector = new HashMap<>();
+    private final Map<Long, Set<Long>> directorsByFilm = new HashMap<>();
+
+    public FilmSearchIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void load() {
+        jdbc.query(FIND_FILMS, rs -> {
+            putFilm(rs.getLong("film_id"), rs.getString("film_name"), List.of());
+        });
+        jdbc.query(FIND_DIRECTORS, rs -> {
+            putDirector(rs.getLong("director_id"), rs.getString("director_name"));
+        });
+        jdbc.query(FIND_FILM_DIRECTORS, rs -> {
+            long filmId = rs.getLong("film_id");
+            long directorId = rs.getLong("director_id");
+            lock.writeLock().lock();
+            try {
+                link(filmId, directorId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+        log.info("Поисковый индекс построен: фильмов {}, режиссеров {}", titles.size(), directorNames.size());
+    }
+
+    /**
+     * Добавляет или заменяет фильм вместе с его режиссерами.
+     */
+    public void putFilm(long filmId, String title, Collection<Long> directorIds) {
+        lock.writeLock().lock();
+        try {
+            removeFilmUnlocked(filmId);
+            String normalized = normalize(title);
+            titles.put(filmId, normalized);
+            addGrams(titleGrams, normalized, filmId);
+            for (Long directorId : directorIds) {
+                link(filmId, directorId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilmUnlocked(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(long directorId, String name) {
+        lock.writeLock().lock();
+        try {
+            String previous = directorNames.remove(directorId);
+            if (previous != null) {
+                removeGrams(directorGrams, previous, directorId);
+            }
+            String normalized = normalize(name);
+            directorNames.put(directorId, normalized);
+            addGrams(directorGrams, normalized, directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(long directorId) {
+        lock.writeLock().lock();
+        try {
+            String previous = directorNames.remove(directorId);
+            if (previous != null) {
+                removeGrams(directorGrams, previous, directorId);
+            }
+            Set<Long> films = filmsByDirector.remove(directorId);
+            if (films != null) {
+                for (Long filmId : films) {
+                    removeFromSet(directorsByFilm, filmId, directorId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Находит фильмы, у которых название и/или имя режиссера содержит запрос.
+     * Возвращает id фильма и релевантность лучшего совпадения.
+     */
+    public Map<Long, Double> search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = normalize(query);
+        Map<Long, Double> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                for (Long filmId : match(titleGrams, titles, normalized)) {
+                    result.merge(filmId, relevance(titles.get(filmId), normalized), Math::max);
+                }
+            }
+            if (byDirector) {
+                for (Long directorId : match(directorGrams, directorNames, normalized)) {
+                    double relevance = relevance(directorNames.get(directorId), normalized);
+                    for (Long filmId : filmsByDirector.getOrDefault(directorId, Set.of())) {
+                        result.merge(filmId, relevance, Math::max);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private static Set<Long> match(Map<String, Set<Long>> grams, Map<Long, String> texts, String query) {
+        Set<Long> matches = new HashSet<>();
+        if (query.length() < GRAM) {
+            texts.forEach((id, text) -> {
+                if (text.contains(query)) {
+                    matches.add(id);
+                }
+            });
+            return matches;
+        }
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<Long> posting = grams.get(gram);
+            if (posting == null) {
+                return matches;
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        // обходим самый короткий список и проверяем остальные, затем подтверждаем вхождение подстроки
+        for (Long id : postings.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < postings.size() && inAll; i++) {
+                inAll = postings.get(i).contains(id);
+            }
+            if (inAll && texts.get(id).contains(query)) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    static double relevance(String text, String query) {
+        if (text.equals(query)) {
+            return EXACT;
+        }
+        if (text.startsWith(query)) {
+            return PREFIX;
+        }
+        int position = text.indexOf(query);
+        if (position > 0 && !Character.isLetterOrDigit(text.charAt(position - 1))) {
+            return WORD_PREFIX;
+        }
+        return SUBSTRING;
+    }
+
+    private void link(long filmId, long directorId) {
+        filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+        directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+    }
+
+    private void removeFilmUnlocked(long filmId) {
+        String previous = titles.remove(filmId);
+        if (previous != null) {
+            removeGrams(titleGrams, previous, filmId);
+        }
+        Set<Long> directors = directorsByFilm.remove(filmId);
+        if (directors != null) {
+            for (Long directorId : directors) {
+                removeFromSet(filmsByDirector, directorId, filmId);
+            }
+        }
+    }
+
+    private static void addGrams(Map<String, Set<Long>> grams, String text, long id) {
+        for (String gram : grams(text)) {
+            grams.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    private static void removeGrams(Map<String, Set<Long>> grams, String text, long id) {
+        for (String gram : grams(text)) {
+            removeFromSet(grams, gram, id);
+        }
+    }
+
+    private static <K> void removeFromSet(Map<K, Set<Long>> map, K key, long id) {
+        Set<Long> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
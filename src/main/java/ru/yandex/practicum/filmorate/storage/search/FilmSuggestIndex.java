@@ -0,0 +1,351 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Префиксное дерево для подсказок по названиям фильмов и именам режиссеров.
+ * В дерево попадает полное имя и каждый его хвост с начала слова, так что "nol" находит
+ * "Christopher Nolan". В каждом узле хранится готовый топ записей поддерева по весу,
+ * поэтому ответ — это спуск по префиксу и копирование топа узла.
+ * Вес фильма — число лайков, вес режиссера — сумма лайков его фильмов.
+ */
+@Slf4j
+@Component
+public class FilmSuggestIndex {
+    public static final int MAX_LIMIT = 20;
+    private static final Entry[] EMPTY = new Entry[0];
+    private static final String FIND_FILMS = "SELECT film_id, film_name, likes_count FROM films";
+    private static final String FIND_DIRECTORS = "SELECT director_id, director_name FROM directors";
+    private static final String FIND_FILM_DIRECTORS = "SELECT film_id, director_id FROM film_directors";
+    private static final Comparator<Entry> BY_WEIGHT = Comparator.<Entry>comparingLong(entry -> entry.weight)
+            .reversed()
+            .thenComparing(entry -> entry.name)
+            .thenComparing(entry -> entry.type)
+            .thenComparingLong(entry -> entry.id);
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node(null, ' ');
+    private final Map<Long, Entry> films = new HashMap<>();
+    private final Map<Long, Entry> directors = new HashMap<>();
+    private final Map<Long, Set<Long>> directorsByFilm = new HashMap<>();
+
+    public FilmSuggestIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Строит дерево заново: записи раскладываются по узлам, затем топы считаются одним проходом.
+     */
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            root = new Node(null, ' ');
+            films.clear();
+            directors.clear();
+            directorsByFilm.clear();
+            jdbc.query(FIND_FILMS, rs -> {
+                Entry film = new Entry(SuggestionType.FILM, rs.getLong("film_id"), rs.getString("film_name"));
+                film.weight = rs.getLong("likes_count");
+                films.put(film.id, film);
+            });
+            jdbc.query(FIND_DIRECTORS, rs -> {
+                Entry director = new Entry(SuggestionType.DIRECTOR,
+                        rs.getLong("director_id"), rs.getString("director_name"));
+                directors.put(director.id, director);
+            });
+            jdbc.query(FIND_FILM_DIRECTORS, rs -> {
+                long filmId = rs.getLong("film_id");
+                long directorId = rs.getLong("director_id");
+                Entry film = films.get(filmId);
+                Entry director = directors.get(directorId);
+                if (film != null && director != null) {
+                    directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+                    director.weight += film.weight;
+                }
+            });
+            films.values().forEach(this::place);
+            directors.values().forEach(this::place);
+            recomputeTree(root);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Дерево подсказок построено: фильмов {}, режиссеров {}", films.size(), directors.size());
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            List<Suggestion> result = new ArrayList<>();
+            if (node == null) {
+                return result;
+            }
+            for (int i = 0; i < Math.min(limit, node.top.length); i++) {
+                Entry entry = node.top[i];
+                result.add(Suggestion.builder()
+                        .type(entry.type)
+                        .id(entry.id)
+                        .name(entry.name)
+                        .weight(entry.weight)
+                        .build());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет или заменяет фильм. Вес существующего фильма сохраняется и переносится
+     * на новый набор режиссеров.
+     */
+    public void putFilm(long filmId, String name, Collection<Long> directorIds) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = films.remove(filmId);
+            Entry film = new Entry(SuggestionType.FILM, filmId, name);
+            if (previous != null) {
+                film.weight = previous.weight;
+                remove(previous);
+                unlinkDirectors(previous);
+            }
+            films.put(filmId, film);
+            insert(film);
+            Set<Long> links = new HashSet<>();
+            for (Long directorId : directorIds) {
+                Entry director = directors.get(directorId);
+                if (director != null) {
+                    links.add(directorId);
+                    changeWeight(director, film.weight);
+                }
+            }
+            if (!links.isEmpty()) {
+                directorsByFilm.put(filmId, links);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            Entry film = films.remove(filmId);
+            if (film != null) {
+                remove(film);
+                unlinkDirectors(film);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(long directorId, String name) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = directors.remove(directorId);
+            Entry director = new Entry(SuggestionType.DIRECTOR, directorId, name);
+            if (previous != null) {
+                director.weight = previous.weight;
+                remove(previous);
+            }
+            directors.put(directorId, director);
+            insert(director);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(long directorId) {
+        lock.writeLock().lock();
+        try {
+            Entry director = directors.remove(directorId);
+            if (director != null) {
+                remove(director);
+            }
+            directorsByFilm.values().forEach(links -> links.remove(directorId));
+            directorsByFilm.values().removeIf(Set::isEmpty);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Меняет вес фильма и его режиссеров на delta лайков.
+     */
+    public void changeLikes(long filmId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Entry film = films.get(filmId);
+            if (film == null) {
+                return;
+            }
+            changeWeight(film, delta);
+            for (Long directorId : directorsByFilm.getOrDefault(filmId, Set.of())) {
+                changeWeight(directors.get(directorId), delta);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unlinkDirectors(Entry film) {
+        Set<Long> links = directorsByFilm.remove(film.id);
+        if (links != null) {
+            for (Long directorId : links) {
+                changeWeight(directors.get(directorId), -film.weight);
+            }
+        }
+    }
+
+    private void changeWeight(Entry entry, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        entry.weight += delta;
+        for (String key : entry.keys) {
+            recomputePath(find(key));
+        }
+    }
+
+    private void insert(Entry entry) {
+        place(entry);
+        for (String key : entry.keys) {
+            recomputePath(find(key));
+        }
+    }
+
+    private void place(Entry entry) {
+        for (String key : entry.keys) {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                Node parent = node;
+                node = node.children.computeIfAbsent(c, ch -> new Node(parent, ch));
+            }
+            node.terminals.add(entry);
+        }
+    }
+
+    private void remove(Entry entry) {
+        for (String key : entry.keys) {
+            Node node = find(key);
+            node.terminals.remove(entry);
+            // убираем опустевшие узлы, чтобы дерево не росло от переименований
+            while (node.parent != null && node.terminals.isEmpty() && node.children.isEmpty()) {
+                node.parent.children.remove(node.ch);
+                node = node.parent;
+            }
+            recomputePath(node);
+        }
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        return node;
+    }
+
+    private void recomputePath(Node node) {
+        for (Node current = node; current != null; current = current.parent) {
+            recompute(current);
+        }
+    }
+
+    private void recomputeTree(Node node) {
+        // обход в глубину без рекурсии: узел считается после всех своих потомков
+        List<Node> order = new ArrayList<>();
+        List<Node> stack = new ArrayList<>(List.of(node));
+        while (!stack.isEmpty()) {
+            Node current = stack.remove(stack.size() - 1);
+            order.add(current);
+            stack.addAll(current.children.values());
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            recompute(order.get(i));
+        }
+    }
+
+    private static void recompute(Node node) {
+        // одна запись может прийти из нескольких потомков, если в имени повторяется слово
+        Set<Entry> candidates = new LinkedHashSet<>(node.terminals);
+        for (Node child : node.children.values()) {
+            for (Entry entry : child.top) {
+                candidates.add(entry);
+            }
+        }
+        node.top = candidates.stream()
+                .sorted(BY_WEIGHT)
+                .limit(MAX_LIMIT)
+                .toArray(Entry[]::new);
+    }
+
+    private static Set<String> keys(String name) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < name.length(); i++) {
+            boolean wordStart = i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1));
+            if (wordStart && Character.isLetterOrDigit(name.charAt(i))) {
+                keys.add(name.substring(i));
+            }
+        }
+        return keys;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Node {
+        private final Node parent;
+        private final char ch;
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private final List<Entry> terminals = new ArrayList<>(1);
+        private Entry[] top = EMPTY;
+
+        private Node(Node parent, char ch) {
+            this.parent = parent;
+            this.ch = ch;
+        }
+    }
+
+    private static class Entry {
+        private final SuggestionType type;
+        private final long id;
+        private final String name;
+        private final Set<String> keys;
+        private long weight;
+
+        private Entry(SuggestionType type, long id, String name) {
+            this.type = type;
+            this.id = id;
+            this.name = name == null ? "" : name;
+            this.keys = keys(normalize(this.name));
+        }
+    }
+}
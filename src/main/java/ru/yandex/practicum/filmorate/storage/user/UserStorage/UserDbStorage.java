@@ -6,19 +6,26 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
 import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.friends.FriendshipIndex;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.search.FilmSuggestIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -26,14 +33,21 @@ import java.util.*;
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
     private final JdbcTemplate jdbc;
+    private final NamedParameterJdbcTemplate namedJdbc;
     private final RowMapper<User> mapper;
-    private final @Qualifier("frendIdsRowMapper") RowMapper<Long> frendIdsRowMapper;
     private final FeedDbStorage feedDbStorage;
+    private final FriendshipIndex friendshipIndex;
+    private final LikesIndex likesIndex;
+    private final FilmSuggestIndex suggestIndex;
 
     private static final String FIND_ALL_QUERY = "SELECT * FROM users";
-    private static final String FIND_FRIENDS_BY_ID = "SELECT f.friend_id from FRIENDSHIPS f \n" +
-            "WHERE f.user_id = ? ";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE user_id = ?";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT user_id FROM users WHERE user_id IN (:ids)";
+    private static final String EXISTS_BY_ID_QUERY = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id = ?)";
+    private static final String FIND_ID_BY_EMAIL_QUERY = "SELECT user_id FROM users WHERE email = ?";
+    private static final int FIND_BY_IDS_CHUNK_SIZE = 1000;
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE user_id IN (:ids)";
     private static final String INSERT_QUERY = "INSERT INTO users(user_name, email, login, birthday) " +
             "VALUES (?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE users SET user_name = ?, email = ?, login = ?, birthday = ?  " +
@@ -50,6 +64,9 @@ public class UserDbStorage implements UserStorage {
             "WHERE (f.user_id = :1 AND f.friend_id = :2)\n" +
             "OR (f.friend_id = :1 AND f.user_id = :2) ";
     private static final String DELETE_USER = "DELETE FROM USERS WHERE user_id = ?";
+    // лайки удаляются каскадно, поэтому счетчики фильмов уменьшаем заранее
+    private static final String DECREMENT_LIKED_FILMS_COUNT = "UPDATE films SET likes_count = likes_count - 1 " +
+            "WHERE film_id IN (SELECT film_id FROM likes WHERE user_id = ?)";
 
     @Override
     public Collection<User> findAll() {
@@ -57,17 +74,57 @@ public class UserDbStorage implements UserStorage {
         for (User user : users) {
             user.setFriends(findFriendByUserId(user.getId()));
         }
-        return jdbc.query(FIND_ALL_QUERY, mapper);
+        return users;
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        List<User> users = jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+        for (User user : users) {
+            user.setFriends(findFriendByUserId(user.getId()));
+        }
+        return users;
+    }
+
+    /**
+     * Загружает пользователей пачками по FIND_BY_IDS_CHUNK_SIZE id и возвращает их в порядке запроса
+     * (повторяющиеся id возвращаются один раз). Если часть пользователей не найдена,
+     * бросает NotFoundException со списком отсутствующих id.
+     */
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Long, User> usersById = new HashMap<>();
+        for (int from = 0; from < uniqueIds.size(); from += FIND_BY_IDS_CHUNK_SIZE) {
+            List<Long> chunk = uniqueIds.subList(from, Math.min(from + FIND_BY_IDS_CHUNK_SIZE, uniqueIds.size()));
+            for (User user : namedJdbc.query(FIND_BY_IDS_QUERY, new MapSqlParameterSource("ids", chunk), mapper)) {
+                user.setFriends(findFriendByUserId(user.getId()));
+                usersById.put(user.getId(), user);
+            }
+        }
+        List<Long> missingIds = uniqueIds.stream()
+                .filter(id -> !usersById.containsKey(id))
+                .collect(Collectors.toList());
+        if (!missingIds.isEmpty()) {
+            throw new NotFoundException("Пользователи с id = " + missingIds + " не найдены");
+        }
+        return uniqueIds.stream()
+                .map(usersById::get)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Collection<Long> findCommonFriendIds(long userId, long otherId) {
+        return Arrays.stream(friendshipIndex.getCommonFriends(userId, otherId))
+                .boxed()
+                .collect(Collectors.toList());
     }
 
     public User findUserById(long userId) {
         try {
             User user = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, userId);
             if (user != null) {
-                Set<Long> friendIds = findFriendByUserId(user.getId());
-                if (friendIds != null) {
-                    user.setFriends(friendIds);
-                }
+                user.setFriends(findFriendByUserId(user.getId()));
             } else {
                 throw new EmptyResultDataAccessException(0);
             }
@@ -77,15 +134,34 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
-    private Set<Long> findFriendByUserId(Long userId) {
-        try {
-            return new HashSet<>(jdbc.query(FIND_FRIENDS_BY_ID,
-                                            new Object[]{userId},
-                                            frendIdsRowMapper));
-        } catch (EmptyResultDataAccessException ignored) {
-            log.info("У пользователя с id = {} нет друзей", userId);
-            return null;
+    @Override
+    public boolean existsById(long userId) {
+        return Boolean.TRUE.equals(jdbc.queryForObject(EXISTS_BY_ID_QUERY, Boolean.class, userId));
+    }
+
+    @Override
+    public Set<Long> findExistingUserIds(Collection<Long> ids) {
+        List<Long> uniqueIds = new ArrayList<>(new HashSet<>(ids));
+        Set<Long> existing = new HashSet<>();
+        for (int from = 0; from < uniqueIds.size(); from += FIND_BY_IDS_CHUNK_SIZE) {
+            List<Long> chunk = uniqueIds.subList(from, Math.min(from + FIND_BY_IDS_CHUNK_SIZE, uniqueIds.size()));
+            existing.addAll(namedJdbc.queryForList(FIND_EXISTING_IDS_QUERY,
+                    new MapSqlParameterSource("ids", chunk), Long.class));
         }
+        return existing;
+    }
+
+    @Override
+    public Optional<Long> findUserIdByEmail(String email) {
+        // поиск идет по уникальному индексу USERS_EMAIL_UNIQUE
+        return jdbc.queryForList(FIND_ID_BY_EMAIL_QUERY, Long.class, email).stream().findFirst();
+    }
+
+    private Set<Long> findFriendByUserId(Long userId) {
+        // друзья берутся из графа дружбы в памяти, без запроса к FRIENDSHIPS
+        return Arrays.stream(friendshipIndex.getFriends(userId))
+                .boxed()
+                .collect(Collectors.toCollection(HashSet::new));
     }
 
     @Override
@@ -132,6 +208,7 @@ public class UserDbStorage implements UserStorage {
                     friendId);
         checkFriendStatus(userId, friendId);
         feedDbStorage.createFeed(userId, friendId, EventType.FRIEND, Operation.ADD);
+        friendshipIndex.addFriend(userId, friendId);
     }
 
     @Override
@@ -140,22 +217,31 @@ public class UserDbStorage implements UserStorage {
                 userId,
                 friendId);
         feedDbStorage.createFeed(userId, friendId, EventType.FRIEND, Operation.REMOVE);
+        friendshipIndex.removeFriend(userId, friendId);
     }
 
     @Override
+    @Transactional
     public void deleteUser(long id) {
+        jdbc.update(DECREMENT_LIKED_FILMS_COUNT, id);
         int affectedRows = jdbc.update(DELETE_USER, id);
         if (affectedRows == 0) {
             log.error("Попытка получить несуществующего пользователя");
             throw new NotFoundException("Пользователь с ID " + id + " не найден");
         }
-}
+        AfterCommit.run(() -> {
+            for (long filmId : likesIndex.getLikedFilms(id)) {
+                suggestIndex.changeLikes(filmId, -1);
+            }
+            likesIndex.removeUser(id);
+            friendshipIndex.removeUser(id);
+        });
+    }
 
     private void checkFriendStatus(long userId, long friendId) {
-        NamedParameterJdbcTemplate namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbc);
         Map<String, Object> params = new HashMap<>();
         params.put("1", userId);
         params.put("2", friendId);
-        namedParameterJdbcTemplate.update(CHECK_FRIEND_STATUS, params);
+        namedJdbc.update(CHECK_FRIEND_STATUS, params);
     }
 }
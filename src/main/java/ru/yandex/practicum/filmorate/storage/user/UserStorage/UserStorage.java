@@ -3,16 +3,31 @@ package ru.yandex.practicum.filmorate.storage.user.UserStorage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 public interface UserStorage {
     public Collection<User> findAll();
 
+    public List<User> findPage(long afterId, int limit);
+
     public User create(User user);
 
     public User update(User newUser);
 
     public User findUserById(long id);
 
+    public List<User> findUsersByIds(Collection<Long> ids);
+
+    public boolean existsById(long id);
+
+    public Set<Long> findExistingUserIds(Collection<Long> ids);
+
+    public Optional<Long> findUserIdByEmail(String email);
+
+    public Collection<Long> findCommonFriendIds(long userId, long otherId);
+
     public void addFriend(long userId, long friendId);
 
     public void removeFriend(long userId, long friendId);
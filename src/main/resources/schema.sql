@@ -16,7 +16,8 @@ CREATE TABLE IF NOT EXISTS PUBLIC.USERS (
 	USER_NAME VARCHAR(255),
 	EMAIL VARCHAR(255),
 	LOGIN VARCHAR(255),
-	BIRTHDAY DATE
+	BIRTHDAY DATE,
+	CONSTRAINT USERS_EMAIL_UNIQUE UNIQUE (EMAIL)
 );
 
 CREATE TABLE IF NOT EXISTS PUBLIC.MPA_RATINGS (
@@ -31,16 +32,20 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILMS (
 	RELEASE_DATE DATE,
 	DURATION INTEGER,
 	MPA_RATING_ID BIGINT,
+	LIKES_COUNT INTEGER DEFAULT 0 NOT NULL,
 	CONSTRAINT FILMS_MPA_RATINGS_FK FOREIGN KEY (MPA_RATING_ID) REFERENCES PUBLIC.MPA_RATINGS(MPA_RATING_ID)
 	ON DELETE SET NULL
 );
 
+CREATE INDEX IF NOT EXISTS FILMS_LIKES_COUNT_IDX ON PUBLIC.FILMS (LIKES_COUNT DESC, FILM_ID);
+
 CREATE TABLE IF NOT EXISTS PUBLIC.REVIEWS (
     REVIEW_ID INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     CONTENT VARCHAR,
     IS_POSITIVE BOOLEAN,
     USER_ID INT NOT NULL,
     FILM_ID INT NOT NULL,
+    USEFUL INT DEFAULT 0 NOT NULL,
     FOREIGN KEY (USER_ID) REFERENCES PUBLIC.USERS (USER_ID) ON DELETE CASCADE,
     FOREIGN KEY (FILM_ID) REFERENCES PUBLIC.FILMS (FILM_ID) ON DELETE CASCADE
 );
@@ -49,6 +54,7 @@ CREATE TABLE IF NOT EXISTS PUBLIC.USEFUL (
     REVIEW_ID INT NOT NULL,
     USER_ID INT NOT NULL,
     IS_LIKE BOOLEAN,
+    PRIMARY KEY (REVIEW_ID, USER_ID),
     FOREIGN KEY(REVIEW_ID) REFERENCES PUBLIC.REVIEWS(REVIEW_ID),
     FOREIGN KEY(USER_ID) REFERENCES PUBLIC.USERS(USER_ID)
 );
@@ -65,6 +71,9 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FEED (
     CONSTRAINT CHK_OPERATION CHECK (OPERATION IN ('ADD', 'UPDATE', 'REMOVE'))
 );
 
+CREATE INDEX IF NOT EXISTS FEED_USER_TIME_IDX ON PUBLIC.FEED (USER_ID, TIME_STAMP);
+CREATE INDEX IF NOT EXISTS FEED_USER_EVENT_IDX ON PUBLIC.FEED (USER_ID, EVENT_ID);
+
 CREATE TABLE IF NOT EXISTS PUBLIC.FRIENDSHIPS (
 	USER_ID BIGINT NOT NULL,
 	FRIEND_ID BIGINT NOT NULL,
@@ -78,6 +87,7 @@ CREATE TABLE IF NOT EXISTS PUBLIC.LIKES (
 	LIKE_ID BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
 	USER_ID BIGINT NOT NULL,
 	FILM_ID BIGINT NOT NULL,
+	CONSTRAINT LIKES_USER_FILM_UNIQUE UNIQUE (USER_ID, FILM_ID),
 	CONSTRAINT LIKES_USERS_FK FOREIGN KEY (USER_ID) REFERENCES PUBLIC.USERS(USER_ID) ON DELETE CASCADE,
 	CONSTRAINT LIKES_FILMS_FK FOREIGN KEY (FILM_ID) REFERENCES PUBLIC.FILMS(FILM_ID) ON DELETE CASCADE
 );
@@ -110,3 +120,14 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM_DIRECTORS (
     CONSTRAINT FILM_DIRECTORS_UNIQUE UNIQUE (FILM_ID, DIRECTOR_ID)
 );
 
+
+-- Вторичные индексы под запросы приложения, набор 1.
+-- Индексы FEED и FILMS.LIKES_COUNT заданы выше рядом с таблицами; лайки пользователя
+-- ищутся по уникальному ключу LIKES_USER_FILM_UNIQUE (USER_ID, FILM_ID), оценки отзывов —
+-- по первичному ключу USEFUL (REVIEW_ID, USER_ID).
+CREATE INDEX IF NOT EXISTS LIKES_FILM_USER_IDX ON PUBLIC.LIKES (FILM_ID, USER_ID);
+CREATE INDEX IF NOT EXISTS FILMS_RELEASE_DATE_IDX ON PUBLIC.FILMS (RELEASE_DATE);
+CREATE INDEX IF NOT EXISTS FILM_GENRE_GENRE_IDX ON PUBLIC.FILM_GENRE (GENRE_ID, FILM_ID);
+CREATE INDEX IF NOT EXISTS FILM_DIRECTORS_DIRECTOR_IDX ON PUBLIC.FILM_DIRECTORS (DIRECTOR_ID, FILM_ID);
+CREATE INDEX IF NOT EXISTS REVIEWS_FILM_USEFUL_IDX ON PUBLIC.REVIEWS (FILM_ID, USEFUL DESC, REVIEW_ID);
+CREATE INDEX IF NOT EXISTS REVIEWS_USEFUL_IDX ON PUBLIC.REVIEWS (USEFUL DESC, REVIEW_ID);
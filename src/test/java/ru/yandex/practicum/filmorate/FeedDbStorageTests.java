@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.FeedStats;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Отложенная запись пишет события из отдельного потока, поэтому тест работает без общей транзакции
+ * и сам удаляет созданного пользователя.
+ */
+@JdbcTest(properties = {
+		"filmorate.feed.queue-capacity=4",
+		"filmorate.feed.flush-size=2",
+		"filmorate.feed.flush-interval-ms=60000"
+})
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FeedDbStorageTests {
+	@Autowired
+	private FeedDbStorage feedDbStorage;
+	@Autowired
+	private UserDbStorage userStorage;
+	@Autowired
+	private FilmDbStorage filmStorage;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private User user;
+
+	@AfterEach
+	public void cleanUp() {
+		if (user != null) {
+			userStorage.deleteUser(user.getId());
+		}
+	}
+
+	@Test
+	public void testQueuedEventsAreVisibleInOwnFeedInOrder() {
+		user = createUser();
+		FeedStats before = feedDbStorage.getStats();
+
+		for (long entityId = 1; entityId <= 10; entityId++) {
+			feedDbStorage.createFeed(user.getId(), entityId, EventType.LIKE, Operation.ADD);
+		}
+		List<Feed> feed = feedDbStorage.getFeedByUser(user.getId());
+
+		assertThat(feed).extracting(Feed::getEntityId)
+				.containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+		FeedStats after = feedDbStorage.getStats();
+		assertThat(after.getQueueSize()).isZero();
+		assertThat(after.getEnqueued() - before.getEnqueued()).isEqualTo(10);
+		assertThat(after.getWritten() - before.getWritten()).isEqualTo(10);
+		assertThat(after.getMaxQueueSize()).isLessThanOrEqualTo(4);
+	}
+
+	@Test
+	public void testFeedKeysetPagination() {
+		user = createUser();
+		for (long entityId = 1; entityId <= 5; entityId++) {
+			feedDbStorage.createFeed(user.getId(), entityId, EventType.FRIEND, Operation.ADD);
+		}
+
+		List<Feed> firstPage = feedDbStorage.getFeedByUser(user.getId(), 0, 2);
+		List<Feed> secondPage = feedDbStorage.getFeedByUser(user.getId(), firstPage.get(1).getEventId(), 2);
+		List<Feed> lastPage = feedDbStorage.getFeedByUser(user.getId(), secondPage.get(1).getEventId(), 2);
+
+		assertThat(firstPage).extracting(Feed::getEntityId).containsExactly(1L, 2L);
+		assertThat(secondPage).extracting(Feed::getEntityId).containsExactly(3L, 4L);
+		assertThat(lastPage).extracting(Feed::getEntityId).containsExactly(5L);
+	}
+
+	@Test
+	public void testFailedRowInBatchDoesNotDuplicateOthers() {
+		user = createUser();
+		FeedStats before = feedDbStorage.getStats();
+
+		// при flush-size=2 первый пакет состоит из корректного события и события несуществующего пользователя
+		feedDbStorage.createFeeds(List.of(feed(user.getId(), 1L), feed(-1L, 2L), feed(user.getId(), 3L)));
+
+		assertThat(feedDbStorage.getFeedByUser(user.getId())).extracting(Feed::getEntityId)
+				.containsExactly(1L, 3L);
+		FeedStats after = feedDbStorage.getStats();
+		assertThat(after.getWritten() - before.getWritten()).isEqualTo(2);
+		assertThat(after.getFailed() - before.getFailed()).isEqualTo(1);
+	}
+
+	@Test
+	public void testRolledBackLikeLeavesNoEvent() {
+		user = createUser();
+		Film film = filmStorage.create(Film.builder()
+				.name("FeedFilm")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		try {
+			new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+				filmStorage.addLike(film.getId(), user.getId());
+				status.setRollbackOnly();
+			});
+
+			assertThat(feedDbStorage.getFeedByUser(user.getId())).isEmpty();
+			assertThat(feedDbStorage.getStats().getQueueSize()).isZero();
+
+			filmStorage.addLike(film.getId(), user.getId());
+
+			assertThat(feedDbStorage.getFeedByUser(user.getId()))
+					.extracting(Feed::getEventType)
+					.containsExactly(EventType.LIKE);
+		} finally {
+			filmStorage.deleteFilm(film.getId());
+		}
+	}
+
+	private Feed feed(Long userId, Long entityId) {
+		return Feed.builder()
+				.timestamp(System.currentTimeMillis())
+				.userId(userId)
+				.entityId(entityId)
+				.eventType(EventType.LIKE)
+				.operation(Operation.ADD)
+				.build();
+	}
+
+	private User createUser() {
+		return userStorage.create(User.builder()
+				.name("FeedUser")
+				.email("feed" + System.nanoTime() + "@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("FeedUser")
+				.friends(new HashSet<>())
+				.build());
+	}
+}
@@ -0,0 +1,276 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest(properties = "filmorate.feed.write-behind.enabled=false")
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(QueryCounter.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+class FilmHydrationQueryCountTests {
+	@Autowired
+	private FilmDbStorage filmStorage;
+	@Autowired
+	private UserDbStorage userStorage;
+	@Autowired
+	private DirectorStorage directorStorage;
+	@Autowired
+	private DirectoryStorage directoryStorage;
+	@Autowired
+	private FeedDbStorage feedDbStorage;
+	@Autowired
+	private QueryCounter queryCounter;
+
+	@Test
+	public void testFindAllQueryCountDoesNotDependOnFilmCount() {
+		Director director = createDirector("Director All");
+		createFilms(3, director);
+		int fewFilmsQueries = countQueries(() -> filmStorage.findAll(), 3);
+
+		createFilms(30, director);
+		int manyFilmsQueries = countQueries(() -> filmStorage.findAll(), 33);
+
+		assertThat(manyFilmsQueries).isEqualTo(fewFilmsQueries);
+	}
+
+	@Test
+	public void testFindFilmsByDirectorQueryCountDoesNotDependOnFilmCount() {
+		Director director = createDirector("Director By Id");
+		createFilms(3, director);
+		int fewFilmsQueries = countQueries(() -> filmStorage.findFilmsByDirectorId(director.getId(), "likes"), 3);
+
+		createFilms(30, director);
+		int manyFilmsQueries = countQueries(() -> filmStorage.findFilmsByDirectorId(director.getId(), "likes"), 33);
+
+		assertThat(manyFilmsQueries).isEqualTo(fewFilmsQueries);
+	}
+
+	// поисковый индекс пополняется после фиксации, поэтому тест работает без общей транзакции
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testSearchAndGenreQueryCountDoesNotDependOnFilmCount() {
+		Director director = createDirector("Director Search");
+		List<Film> films = new ArrayList<>();
+		try {
+			films.addAll(createFilms(3, director));
+			int fewSearchQueries = countQueries(() -> filmStorage.searchFilmsByQuery("hydrated", "title"), 3);
+			int fewGenreQueries = countQueries(() -> filmStorage.findFilmsByGenre(2L, 100), 3);
+
+			films.addAll(createFilms(30, director));
+			int manySearchQueries = countQueries(() -> filmStorage.searchFilmsByQuery("hydrated", "title"), 33);
+			int manyGenreQueries = countQueries(() -> filmStorage.findFilmsByGenre(2L, 100), 33);
+
+			assertThat(manySearchQueries).isEqualTo(fewSearchQueries);
+			assertThat(manyGenreQueries).isEqualTo(fewGenreQueries);
+		} finally {
+			films.forEach(film -> filmStorage.deleteFilm(film.getId()));
+			directorStorage.delete(director.getId());
+		}
+	}
+
+	@Test
+	public void testHydratedFilmHasAllFields() {
+		Director director = createDirector("Director Fields");
+		createFilms(1, director);
+
+		Collection<Film> films = filmStorage.findFilmsByDirectorId(director.getId(), "year");
+
+		assertThat(films).hasSize(1);
+		Film film = films.iterator().next();
+		assertThat(film.getMpa().getName()).isEqualTo("G");
+		assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1L, 2L);
+		assertThat(film.getGenres()).extracting(Genre::getName).doesNotContainNull();
+		assertThat(film.getDirectors()).extracting(Director::getName).containsExactly("Director Fields");
+		assertThat(film.getLikes()).hasSize(1);
+	}
+
+	@Test
+	public void testHydrationUsesReferenceCache() {
+		Director director = createDirector("Director Cache");
+		createFilms(5, director);
+		filmStorage.findAll();
+		CacheStats genresBefore = directoryStorage.getGenreCacheStats();
+		CacheStats mpaBefore = directoryStorage.getMpaCacheStats();
+		CacheStats directorsBefore = directorStorage.getCacheStats();
+
+		filmStorage.findAll();
+
+		assertThat(directoryStorage.getGenreCacheStats().getMisses()).isEqualTo(genresBefore.getMisses());
+		assertThat(directoryStorage.getGenreCacheStats().getHits()).isGreaterThan(genresBefore.getHits());
+		assertThat(directoryStorage.getMpaCacheStats().getMisses()).isEqualTo(mpaBefore.getMisses());
+		assertThat(directorStorage.getCacheStats().getMisses()).isEqualTo(directorsBefore.getMisses());
+	}
+
+	@Test
+	public void testCachedDirectorIsNotSharedWithCallers() {
+		Director director = createDirector("Director Copy");
+		director.setName("Changed by caller");
+		directorStorage.findDirectorById(director.getId()).setName("Changed by reader");
+
+		assertThat(directorStorage.findDirectorById(director.getId()).getName()).isEqualTo("Director Copy");
+	}
+
+	@Test
+	public void testUpdateAppliesLinksDiffWithConstantQueryCount() {
+		Director director = createDirector("Director Update");
+		Film film = filmStorage.create(Film.builder()
+				.name("Updated film")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.genres(genres(1L))
+				.likes(new HashSet<>())
+				.build());
+
+		queryCounter.reset();
+		Film updated = filmStorage.update(filmUpdate(film.getId(), genres(2L),
+				Set.of(Director.builder().id(director.getId()).build())));
+		int fewLinksQueries = queryCounter.count();
+
+		assertThat(updated.getGenres()).extracting(Genre::getId).containsExactly(2L);
+		assertThat(updated.getDirectors()).extracting(Director::getName).containsExactly("Director Update");
+		Film stored = filmStorage.findFilmById(film.getId());
+		assertThat(stored.getGenres()).extracting(Genre::getId).containsExactly(2L);
+		assertThat(stored.getDirectors()).extracting(Director::getId).containsExactly(director.getId());
+
+		queryCounter.reset();
+		filmStorage.update(filmUpdate(film.getId(), genres(3L, 4L, 5L, 6L), null));
+		int manyLinksQueries = queryCounter.count();
+
+		assertThat(manyLinksQueries).isEqualTo(fewLinksQueries);
+		assertThat(filmStorage.findFilmById(film.getId()).getGenres())
+				.extracting(Genre::getId)
+				.containsExactly(3L, 4L, 5L, 6L);
+	}
+
+	@Test
+	public void testLikeWritesSkipHydrationAndAreIdempotent() {
+		Film film = filmStorage.create(filmUpdate(null, genres(1L, 2L), null));
+		User user = userStorage.create(User.builder()
+				.name("Liker")
+				.email("liker" + System.nanoTime() + "@email.com")
+				.login("Liker")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.friends(new HashSet<>())
+				.build());
+
+		queryCounter.reset();
+		filmStorage.addLike(film.getId(), user.getId());
+		int addQueries = queryCounter.count();
+		filmStorage.addLike(film.getId(), user.getId());
+
+		// вставка лайка, счетчик и событие ленты
+		assertThat(addQueries).isEqualTo(3);
+		assertThat(filmStorage.findFilmById(film.getId()).getLikes()).containsExactly(user.getId());
+		assertThatThrownBy(() -> filmStorage.addLike(-1L, user.getId()))
+				.isInstanceOf(NotFoundException.class)
+				.hasMessageContaining("Фильм");
+		assertThatThrownBy(() -> filmStorage.addLike(film.getId(), -1L))
+				.isInstanceOf(NotFoundException.class)
+				.hasMessageContaining("Пользователь");
+
+		filmStorage.removeLike(film.getId(), user.getId());
+		filmStorage.removeLike(film.getId(), user.getId());
+		assertThat(filmStorage.findFilmById(film.getId()).getLikes()).isEmpty();
+		assertThatThrownBy(() -> filmStorage.removeLike(film.getId(), -1L))
+				.isInstanceOf(NotFoundException.class);
+		// повторные лайк и удаление лайка не добавляют событий в ленту
+		assertThat(feedDbStorage.getFeedByUser(user.getId()))
+				.extracting(Feed::getOperation)
+				.containsExactly(Operation.ADD, Operation.REMOVE);
+	}
+
+	private Film filmUpdate(Long id, Set<Genre> genres, Set<Director> directors) {
+		return Film.builder()
+				.id(id)
+				.name("Updated film")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.genres(genres)
+				.directors(directors)
+				.build();
+	}
+
+	private Set<Genre> genres(Long... ids) {
+		Set<Genre> genres = new HashSet<>();
+		for (Long id : ids) {
+			genres.add(Genre.builder().id(id).build());
+		}
+		return genres;
+	}
+
+	private int countQueries(Supplier<Collection<Film>> query, int expectedAtLeast) {
+		queryCounter.reset();
+		Collection<Film> films = query.get();
+		int queries = queryCounter.count();
+		assertThat(films.size()).isGreaterThanOrEqualTo(expectedAtLeast);
+		return queries;
+	}
+
+	private Director createDirector(String name) {
+		return directorStorage.create(Director.builder().name(name).build());
+	}
+
+	private List<Film> createFilms(int count, Director director) {
+		User user = userStorage.create(User.builder()
+				.name("Liker")
+				.email("liker" + System.nanoTime() + "@email.com")
+				.login("Liker")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.friends(new HashSet<>())
+				.build());
+		List<Film> films = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Film film = filmStorage.create(Film.builder()
+					.name("Hydrated film " + i)
+					.description("FilmDescr")
+					.releaseDate(LocalDate.parse("2001-10-05"))
+					.duration(100)
+					.mpa(Mpa.builder().id(1L).build())
+					.genres(Set.of(Genre.builder().id(1L).build(), Genre.builder().id(2L).build()))
+					.directors(Set.of(Director.builder().id(director.getId()).build()))
+					.likes(new HashSet<>())
+					.build());
+			filmStorage.addLike(film.getId(), user.getId());
+			films.add(film);
+		}
+		return films;
+	}
+}
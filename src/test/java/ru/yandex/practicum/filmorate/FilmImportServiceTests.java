@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.service.FilmExportService;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest(properties = "filmorate.import.batch-size=2")
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+class FilmImportServiceTests {
+	@Autowired
+	private FilmImportService filmImportService;
+	@Autowired
+	private FilmExportService filmExportService;
+	@Autowired
+	private FilmDbStorage filmStorage;
+
+	@Test
+	public void testImportNdjsonReportsRowErrors() {
+		String body = String.join("\n",
+				film("Imported 1", "[{\"id\":1},{\"id\":2}]"),
+				film("", "[]"),
+				film("Imported 2", "[{\"id\":999}]"),
+				"",
+				"{not json",
+				film("Imported 3", "[]"),
+				film("Imported 4", "[{\"id\":3}]"));
+
+		ImportReport report = filmImportService.importFilms(stream(body), "application/x-ndjson");
+
+		assertThat(report.getProcessed()).isEqualTo(6);
+		assertThat(report.getImported()).isEqualTo(3);
+		assertThat(report.getFailed()).isEqualTo(3);
+		assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(2L, 3L, 5L);
+		// поисковый индекс пополняется только после фиксации, а тестовая транзакция откатывается
+		List<Film> imported = findByNamePrefix("Imported");
+		assertThat(imported).extracting(Film::getName)
+				.containsExactlyInAnyOrder("Imported 1", "Imported 3", "Imported 4");
+		assertThat(imported).filteredOn(film -> film.getName().equals("Imported 1"))
+				.flatExtracting(Film::getGenres)
+				.extracting(Genre::getId)
+				.containsExactly(1L, 2L);
+	}
+
+	@Test
+	public void testImportCsvWithQuotedFields() {
+		String body = String.join("\n",
+				"name,description,releaseDate,duration,mpa,genres,directors",
+				"Csv film 1,\"Drama, \"\"classic\"\"\",1999-01-01,120,2,1;2,",
+				"Csv film 2,Short,1800-01-01,90,1,,",
+				"Csv film 3,Short,2001-01-01,90,1,,");
+
+		ImportReport report = filmImportService.importFilms(stream(body), "text/csv");
+
+		assertThat(report.getImported()).isEqualTo(2);
+		assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(3L);
+		Film film = findByNamePrefix("Csv film 1").get(0);
+		assertThat(film.getDescription()).isEqualTo("Drama, \"classic\"");
+		assertThat(film.getMpa().getId()).isEqualTo(2L);
+		assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1L, 2L);
+	}
+
+	@Test
+	public void testExportWritesOneFilmPerLine() throws IOException {
+		filmImportService.importFilms(stream(String.join("\n",
+				film("Exported 1", "[{\"id\":1}]"),
+				film("Exported 2", "[]"),
+				film("Exported 3", "[]"))), "application/x-ndjson");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		filmExportService.exportFilms(out);
+
+		List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+		assertThat(lines).hasSize(filmStorage.findAll().size());
+		assertThat(lines).filteredOn(line -> line.contains("\"Exported ")).hasSize(3);
+		assertThat(lines).filteredOn(line -> line.contains("\"Exported 1\""))
+				.singleElement()
+				.asString()
+				.contains("\"genres\":[{\"id\":1");
+	}
+
+	private String film(String name, String genres) {
+		return "{\"name\":\"" + name + "\",\"description\":\"Descr\",\"releaseDate\":\"2001-10-05\","
+				+ "\"duration\":100,\"mpa\":{\"id\":1},\"genres\":" + genres + "}";
+	}
+
+	private List<Film> findByNamePrefix(String prefix) {
+		return filmStorage.findAll().stream()
+				.filter(film -> film.getName().startsWith(prefix))
+				.toList();
+	}
+
+	private InputStream stream(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.search.FilmSearchIndex;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmSearchIndexTests {
+	private FilmSearchIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		index = new FilmSearchIndex(null);
+		index.putDirector(1L, "Christopher Nolan");
+		index.putDirector(2L, "Denis Villeneuve");
+		index.putFilm(1L, "Interstellar", List.of(1L));
+		index.putFilm(2L, "Dune", List.of(2L));
+		index.putFilm(3L, "Dune: Part Two", List.of(2L));
+		index.putFilm(4L, "The Prestige", List.of(1L));
+	}
+
+	@Test
+	public void testSearchByTitleRanksExactAndPrefixFirst() {
+		Map<Long, Double> found = index.search("DUNE", true, false);
+
+		assertThat(found).containsOnlyKeys(2L, 3L);
+		assertThat(found.get(2L)).isGreaterThan(found.get(3L));
+		assertThat(index.search("stig", true, false)).containsOnlyKeys(4L);
+		assertThat(index.search("du", true, false)).containsOnlyKeys(2L, 3L);
+		assertThat(index.search("dunes", true, false)).isEmpty();
+	}
+
+	@Test
+	public void testSearchByDirectorAndTitle() {
+		assertThat(index.search("nolan", false, true)).containsOnlyKeys(1L, 4L);
+		assertThat(index.search("nolan", true, false)).isEmpty();
+		assertThat(index.search("ne", true, true)).containsOnlyKeys(2L, 3L);
+	}
+
+	@Test
+	public void testIndexFollowsUpdatesAndDeletes() {
+		index.putFilm(1L, "Tenet", List.of(1L));
+		index.removeFilm(4L);
+		index.putDirector(2L, "Ridley Scott");
+
+		assertThat(index.search("interstellar", true, false)).isEmpty();
+		assertThat(index.search("tenet", true, false)).containsOnlyKeys(1L);
+		assertThat(index.search("nolan", false, true)).containsOnlyKeys(1L);
+		assertThat(index.search("villeneuve", false, true)).isEmpty();
+		assertThat(index.search("scott", false, true)).containsOnlyKeys(2L, 3L);
+
+		index.removeDirector(1L);
+		assertThat(index.search("nolan", false, true)).isEmpty();
+	}
+}
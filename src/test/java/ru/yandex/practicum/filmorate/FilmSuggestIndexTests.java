@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+import ru.yandex.practicum.filmorate.storage.search.FilmSuggestIndex;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilmSuggestIndexTests {
+	private FilmSuggestIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		index = new FilmSuggestIndex(null);
+		index.putDirector(1L, "Christopher Nolan");
+		index.putFilm(1L, "Interstellar", List.of(1L));
+		index.putFilm(2L, "Inception", List.of(1L));
+		index.putFilm(3L, "Into the Wild", List.of());
+	}
+
+	@Test
+	public void testSuggestionsAreOrderedByLikes() {
+		index.changeLikes(2L, 5);
+		index.changeLikes(3L, 2);
+
+		List<Suggestion> suggestions = index.suggest("IN", 10);
+
+		assertThat(suggestions).extracting(Suggestion::getId).containsExactly(2L, 3L, 1L);
+		assertThat(index.suggest("in", 2)).extracting(Suggestion::getId).containsExactly(2L, 3L);
+		assertThat(index.suggest("inx", 10)).isEmpty();
+	}
+
+	@Test
+	public void testDirectorWeightIsSumOfFilmLikesAndMatchesWordStart() {
+		index.changeLikes(1L, 3);
+		index.changeLikes(2L, 4);
+
+		List<Suggestion> suggestions = index.suggest("nol", 10);
+
+		assertThat(suggestions).hasSize(1);
+		assertThat(suggestions.get(0).getType()).isEqualTo(SuggestionType.DIRECTOR);
+		assertThat(suggestions.get(0).getWeight()).isEqualTo(7);
+		assertThat(index.suggest("wild", 10)).extracting(Suggestion::getId).containsExactly(3L);
+	}
+
+	@Test
+	public void testUpdatesAreAppliedIncrementally() {
+		index.changeLikes(1L, 3);
+		index.putFilm(1L, "Tenet", List.of());
+		index.removeFilm(2L);
+		index.putDirector(1L, "Nolan");
+
+		assertThat(index.suggest("inter", 10)).isEmpty();
+		assertThat(index.suggest("ten", 10)).extracting(Suggestion::getWeight).containsExactly(3L);
+		assertThat(index.suggest("in", 10)).extracting(Suggestion::getId).containsExactly(3L);
+		assertThat(index.suggest("chris", 10)).isEmpty();
+		assertThat(index.suggest("nolan", 10)).extracting(Suggestion::getWeight).containsExactly(0L);
+
+		index.removeDirector(1L);
+		assertThat(index.suggest("nolan", 10)).isEmpty();
+	}
+}
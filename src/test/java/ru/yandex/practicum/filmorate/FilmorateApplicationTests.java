@@ -3,15 +3,33 @@ package ru.yandex.practicum.filmorate;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportError;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationsService;
+import ru.yandex.practicum.filmorate.service.TimelineService;
 import ru.yandex.practicum.filmorate.storage.directory.DirectoryStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
 import ru.yandex.practicum.filmorate.storage.mappers.*;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
 
@@ -19,10 +37,12 @@ import java.time.LocalDate;
 import java.util.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
-@JdbcTest
+@JdbcTest(properties = "filmorate.feed.write-behind.enabled=false")
 @AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({UserDbStorage.class, FilmDbStorage.class, DirectoryStorage.class,
 		UserRowMapper.class, FilmRowMapper.class, GenreRowMapper.class, MpaRowMapper.class,
@@ -36,6 +56,18 @@ class FilmorateApplicationTests {
 	private FilmDbStorage filmStorage;
 	@Autowired
 	private DirectoryStorage directoryStorage;
+	@Autowired
+	private RecommendationsService recommendationsService;
+	@Autowired
+	private FilmService filmService;
+	@Autowired
+	private TimelineService timelineService;
+	@Autowired
+	private LikesIndex likesIndex;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private JdbcTemplate jdbc;
 
     @Test
 	public void testFindUserById() {
@@ -185,6 +217,123 @@ class FilmorateApplicationTests {
 								.isEmpty());
 	}
 
+	@Test
+	public void testFindCommonFriends() {
+		List<User> users = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			users.add(userStorage.create(User.builder()
+					.name("CommonName" + i)
+					.email("common" + i + "@email.com")
+					.birthday(LocalDate.parse("2001-10-05"))
+					.login("CommonLogin" + i)
+					.friends(new HashSet<>())
+					.build()));
+		}
+		long first = users.get(0).getId();
+		long second = users.get(1).getId();
+		long common = users.get(2).getId();
+		long other = users.get(3).getId();
+		userStorage.addFriend(first, common);
+		userStorage.addFriend(first, other);
+		userStorage.addFriend(second, common);
+
+		assertThat(userStorage.findCommonFriendIds(first, second)).containsExactly(common);
+		assertThat(userStorage.findUsersByIds(List.of(common, other)))
+				.extracting(User::getId)
+				.containsExactly(common, other);
+	}
+
+	@Test
+	public void testFindUsersByIdsKeepsOrderAndReportsMissing() {
+		User first = userStorage.create(User.builder()
+				.name("BatchName1")
+				.email("batch1@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("BatchLogin1")
+				.friends(new HashSet<>())
+				.build());
+		User second = userStorage.create(User.builder()
+				.name("BatchName2")
+				.email("batch2@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("BatchLogin2")
+				.friends(new HashSet<>())
+				.build());
+
+		assertThat(userStorage.findUsersByIds(List.of(second.getId(), first.getId(), second.getId())))
+				.extracting(User::getId)
+				.containsExactly(second.getId(), first.getId());
+		assertThatThrownBy(() -> userStorage.findUsersByIds(List.of(first.getId(), -1L)))
+				.isInstanceOf(NotFoundException.class)
+				.hasMessageContaining("-1");
+	}
+
+	@Test
+	public void testUserExistenceAndEmailLookup() {
+		User user = userStorage.create(User.builder()
+				.name("LookupName")
+				.email("lookup@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("LookupLogin")
+				.friends(new HashSet<>())
+				.build());
+
+		assertThat(userStorage.existsById(user.getId())).isTrue();
+		assertThat(userStorage.existsById(-1L)).isFalse();
+		assertThat(userStorage.findUserIdByEmail("lookup@email.com")).contains(user.getId());
+		assertThat(userStorage.findUserIdByEmail("missing@email.com")).isEmpty();
+	}
+
+	// события попадают в ленту друзей после фиксации, поэтому тест работает без общей транзакции
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testFriendsTimeline() {
+		List<User> users = new ArrayList<>();
+		try {
+			for (int i = 0; i < 3; i++) {
+				users.add(userStorage.create(User.builder()
+						.name("TimelineName" + i)
+						.email("timeline" + i + "_" + System.nanoTime() + "@email.com")
+						.birthday(LocalDate.parse("2001-10-05"))
+						.login("TimelineLogin" + i)
+						.friends(new HashSet<>())
+						.build()));
+			}
+			long reader = users.get(0).getId();
+			long friend = users.get(1).getId();
+			long stranger = users.get(2).getId();
+			userStorage.addFriend(reader, friend);
+			// событие до первого чтения попадает в ленту при построении из БД
+			userStorage.addFriend(friend, stranger);
+			userStorage.addFriend(stranger, friend);
+
+			assertThat(timelineService.getTimeline(reader, 10))
+					.extracting(Feed::getUserId)
+					.containsExactly(friend);
+
+			// событие после первого чтения попадает в буфер при записи
+			userStorage.removeFriend(friend, stranger);
+			assertThat(timelineService.getTimeline(reader, 10))
+					.extracting(Feed::getOperation)
+					.containsExactly(Operation.REMOVE, Operation.ADD);
+
+			userStorage.removeFriend(reader, friend);
+			assertThat(timelineService.getTimeline(reader, 10)).isEmpty();
+		} finally {
+			users.forEach(user -> userStorage.deleteUser(user.getId()));
+		}
+	}
+
+	@Test
+	public void testTimelineRejectsNonPositiveSizes() {
+		assertThatThrownBy(() -> new TimelineService(null, null, null, 0, 10))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("filmorate.timeline.capacity");
+		assertThatThrownBy(() -> new TimelineService(null, null, null, 10, 0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("filmorate.timeline.max-users");
+	}
+
 	@Test
 	public void testFindFilmById() {
 		Film newFilm = Film.builder()
@@ -339,4 +488,279 @@ class FilmorateApplicationTests {
 				});
 	}
 
+	@Test
+	public void testFindTopFilmsByLikesCount() {
+		Film lessPopular = filmStorage.create(Film.builder()
+				.name("LessPopular")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		Film popular = filmStorage.create(Film.builder()
+				.name("Popular")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		User user1 = userStorage.create(User.builder()
+				.name("TopUser1")
+				.email("top1@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("TopUser1")
+				.friends(new HashSet<>())
+				.build());
+		User user2 = userStorage.create(User.builder()
+				.name("TopUser2")
+				.email("top2@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("TopUser2")
+				.friends(new HashSet<>())
+				.build());
+		filmStorage.addLike(popular.getId(), user1.getId());
+		filmStorage.addLike(popular.getId(), user2.getId());
+		filmStorage.addLike(lessPopular.getId(), user1.getId());
+		// повторный лайк не должен увеличивать счетчик
+		filmStorage.addLike(lessPopular.getId(), user1.getId());
+		filmStorage.addLike(lessPopular.getId(), user1.getId());
+
+		List<Film> top = new ArrayList<>(filmStorage.findTopFilms(2));
+
+		assertThat(top).extracting(Film::getId).containsExactly(popular.getId(), lessPopular.getId());
+		assertThat(top.get(1).getLikes()).containsExactly(user1.getId());
+
+		filmStorage.removeLike(popular.getId(), user1.getId());
+		filmStorage.removeLike(popular.getId(), user2.getId());
+
+		top = new ArrayList<>(filmStorage.findTopFilms(2));
+		assertThat(top).extracting(Film::getId).containsExactly(lessPopular.getId(), popular.getId());
+	}
+
+	@Test
+	public void testAddLikesInBulk() {
+		Film film = filmStorage.create(Film.builder()
+				.name("BulkLiked")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		User user1 = userStorage.create(User.builder()
+				.name("BulkUser1")
+				.email("bulk1@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("BulkUser1")
+				.friends(new HashSet<>())
+				.build());
+		User user2 = userStorage.create(User.builder()
+				.name("BulkUser2")
+				.email("bulk2@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("BulkUser2")
+				.friends(new HashSet<>())
+				.build());
+		filmStorage.addLike(film.getId(), user1.getId());
+
+		ImportReport report = filmService.addLikes(List.of(
+				Like.builder().filmId(film.getId()).userId(user1.getId()).build(),
+				Like.builder().filmId(film.getId()).userId(user2.getId()).build(),
+				Like.builder().filmId(film.getId()).userId(user2.getId()).build(),
+				Like.builder().filmId(-1L).userId(user2.getId()).build()));
+
+		assertThat(report.getProcessed()).isEqualTo(4);
+		assertThat(report.getImported()).isEqualTo(1);
+		assertThat(report.getSkipped()).isEqualTo(2);
+		assertThat(report.getErrors()).extracting(ImportError::getLine).containsExactly(4L);
+		assertThat(filmStorage.findFilmById(film.getId()).getLikes())
+				.containsExactlyInAnyOrder(user1.getId(), user2.getId());
+	}
+
+	@Test
+	public void testFilmsKeysetPagination() {
+		List<Long> ids = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			ids.add(filmStorage.create(Film.builder()
+					.name("Paged" + i)
+					.description("FilmDescr")
+					.releaseDate(LocalDate.parse("2001-10-05"))
+					.duration(100)
+					.mpa(Mpa.builder().id(1L).build())
+					.build()).getId());
+		}
+
+		Page<Film> firstPage = filmService.findPage(ids.get(0) - 1, 2);
+		Page<Film> lastPage = filmService.findPage(firstPage.getNextCursor(), 2);
+
+		assertThat(firstPage.getItems()).extracting(Film::getId).containsExactly(ids.get(0), ids.get(1));
+		assertThat(firstPage.getNextCursor()).isEqualTo(ids.get(1));
+		assertThat(lastPage.getItems()).extracting(Film::getId).containsExactly(ids.get(2));
+		assertThat(lastPage.getNextCursor()).isNull();
+	}
+
+	// индекс лайков меняется после фиксации, поэтому тест работает без общей транзакции и удаляет свои данные
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testRecommendationsFromMostSimilarUser() {
+		List<Film> films = new ArrayList<>();
+		List<User> users = new ArrayList<>();
+		try {
+			checkRecommendations(films, users);
+		} finally {
+			users.forEach(user -> userStorage.deleteUser(user.getId()));
+			films.forEach(film -> filmStorage.deleteFilm(film.getId()));
+		}
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testDeletedNeighbourInvalidatesRecommendations() {
+		List<Film> films = new ArrayList<>();
+		List<User> users = new ArrayList<>();
+		try {
+			for (int i = 0; i < 2; i++) {
+				films.add(filmStorage.create(Film.builder()
+						.name("NeighbourFilm" + i)
+						.description("FilmDescr")
+						.releaseDate(LocalDate.parse("2001-10-05"))
+						.duration(100)
+						.mpa(Mpa.builder().id(1L).build())
+						.likes(new HashSet<>())
+						.build()));
+				users.add(userStorage.create(User.builder()
+						.name("Neighbour" + i)
+						.email("neighbour" + i + "_" + System.nanoTime() + "@email.com")
+						.birthday(LocalDate.parse("2001-10-05"))
+						.login("Neighbour" + i)
+						.friends(new HashSet<>())
+						.build()));
+			}
+			insertLike(films.get(0), users.get(0));
+			insertLike(films.get(0), users.get(1));
+			insertLike(films.get(1), users.get(1));
+			// лайки, прочитанные при старте, не имеют версии, как после перезапуска приложения
+			likesIndex.load();
+
+			assertThat(recommendationsService.findRecomendationByUserId(users.get(0).getId()))
+					.extracting(Film::getId)
+					.containsExactly(films.get(1).getId());
+
+			userStorage.deleteUser(users.get(1).getId());
+			users.remove(1);
+
+			assertThat(recommendationsService.findRecomendationByUserId(users.get(0).getId())).isEmpty();
+		} finally {
+			users.forEach(user -> userStorage.deleteUser(user.getId()));
+			films.forEach(film -> filmStorage.deleteFilm(film.getId()));
+		}
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testRolledBackFilmDoesNotReachIndexes() {
+		User user = userStorage.create(User.builder()
+				.name("Rollback")
+				.email("rollback" + System.nanoTime() + "@email.com")
+				.birthday(LocalDate.parse("2001-10-05"))
+				.login("Rollback")
+				.friends(new HashSet<>())
+				.build());
+		try {
+			new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+				Film film = filmStorage.create(Film.builder()
+						.name("Rolledback film")
+						.description("FilmDescr")
+						.releaseDate(LocalDate.parse("2001-10-05"))
+						.duration(100)
+						.mpa(Mpa.builder().id(1L).build())
+						.likes(new HashSet<>())
+						.build());
+				filmStorage.addLike(film.getId(), user.getId());
+				status.setRollbackOnly();
+			});
+
+			assertThat(filmService.searchFilmsByQuery("Rolledback", "title")).isEmpty();
+			assertThat(filmService.suggest("Rolledback", 10)).isEmpty();
+			assertThat(likesIndex.getLikedFilms(user.getId())).isEmpty();
+		} finally {
+			userStorage.deleteUser(user.getId());
+		}
+	}
+
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void testRolledBackUserDeleteKeepsFriendship() {
+		List<User> users = new ArrayList<>();
+		try {
+			for (int i = 0; i < 2; i++) {
+				users.add(userStorage.create(User.builder()
+						.name("Friend" + i)
+						.email("friend" + i + "_" + System.nanoTime() + "@email.com")
+						.birthday(LocalDate.parse("2001-10-05"))
+						.login("Friend" + i)
+						.friends(new HashSet<>())
+						.build()));
+			}
+			userStorage.addFriend(users.get(0).getId(), users.get(1).getId());
+
+			new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+				userStorage.deleteUser(users.get(1).getId());
+				status.setRollbackOnly();
+			});
+
+			assertThat(userStorage.findUserById(users.get(0).getId()).getFriends())
+					.containsExactly(users.get(1).getId());
+		} finally {
+			users.forEach(user -> userStorage.deleteUser(user.getId()));
+		}
+	}
+
+	private void insertLike(Film film, User user) {
+		jdbc.update("INSERT INTO likes (film_id, user_id) VALUES (?, ?)", film.getId(), user.getId());
+		jdbc.update("UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?", film.getId());
+	}
+
+	private void checkRecommendations(List<Film> films, List<User> users) {
+		for (int i = 0; i < 4; i++) {
+			films.add(filmStorage.create(Film.builder()
+					.name("RecFilm" + i)
+					.description("FilmDescr")
+					.releaseDate(LocalDate.parse("2001-10-05"))
+					.duration(100)
+					.mpa(Mpa.builder().id(1L).build())
+					.likes(new HashSet<>())
+					.build()));
+		}
+		for (int i = 0; i < 3; i++) {
+			users.add(userStorage.create(User.builder()
+					.name("RecUser" + i)
+					.email("rec" + i + "_" + System.nanoTime() + "@email.com")
+					.birthday(LocalDate.parse("2001-10-05"))
+					.login("RecUser" + i)
+					.friends(new HashSet<>())
+					.build()));
+		}
+		filmStorage.addLike(films.get(0).getId(), users.get(0).getId());
+		filmStorage.addLike(films.get(1).getId(), users.get(0).getId());
+		filmStorage.addLike(films.get(0).getId(), users.get(1).getId());
+		filmStorage.addLike(films.get(1).getId(), users.get(1).getId());
+		filmStorage.addLike(films.get(2).getId(), users.get(1).getId());
+		filmStorage.addLike(films.get(3).getId(), users.get(2).getId());
+
+		Collection<Film> recommendations = recommendationsService.findRecomendationByUserId(users.get(0).getId());
+
+		assertThat(recommendations).extracting(Film::getId).containsExactly(films.get(2).getId());
+		assertThat(recommendations.iterator().next().getLikes()).containsExactly(users.get(1).getId());
+
+		// лайк соседа делает сохраненный снимок рекомендаций недействительным
+		filmStorage.addLike(films.get(3).getId(), users.get(1).getId());
+		recommendations = recommendationsService.findRecomendationByUserId(users.get(0).getId());
+
+		assertThat(recommendations).extracting(Film::getId)
+				.containsExactly(films.get(2).getId(), films.get(3).getId());
+	}
+
 }
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.likes.LikesIndex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LikesIndexTests {
+	private static final long LARGE_FILM_ID = Integer.MAX_VALUE + 10L;
+
+	@Test
+	public void testFilmIdsBeyondIntRange() {
+		LikesIndex index = new LikesIndex(null);
+		index.addLike(1L, LARGE_FILM_ID);
+		index.addLike(1L, 5L);
+		index.addLike(2L, LARGE_FILM_ID);
+
+		assertThat(index.getLikedFilms(1L)).containsExactly(5L, LARGE_FILM_ID);
+		assertThat(LikesIndex.intersectionSize(index.getLikedFilms(1L), index.getLikedFilms(2L))).isEqualTo(1);
+
+		index.removeFilm(LARGE_FILM_ID);
+		assertThat(index.getLikedFilms(1L)).containsExactly(5L);
+		assertThat(index.getLikedFilms(2L)).isEmpty();
+	}
+
+	@Test
+	public void testRemoveUserBumpsVersion() {
+		LikesIndex index = new LikesIndex(null);
+		index.addLike(1L, 5L);
+		assertThat(index.getVersion(1L)).isEqualTo(1L);
+
+		index.removeUser(1L);
+
+		assertThat(index.getLikedFilms(1L)).isEmpty();
+		assertThat(index.getVersion(1L)).isEqualTo(2L);
+	}
+}
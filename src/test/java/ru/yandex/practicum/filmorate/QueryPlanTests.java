@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.yandex.practicum.filmorate.storage.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет планы частых запросов: ни один не должен читать таблицу целиком.
+ * Текст запросов берется из констант хранилищ, чтобы тест следил за актуальным SQL.
+ */
+@JdbcTest(properties = "filmorate.feed.write-behind.enabled=false")
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+class QueryPlanTests {
+	private static final LocalDate FROM = LocalDate.of(2000, 1, 1);
+	private static final LocalDate TO = LocalDate.of(2001, 1, 1);
+
+	@Autowired
+	private JdbcTemplate jdbc;
+	@Autowired
+	private NamedParameterJdbcTemplate namedJdbc;
+
+	@Test
+	public void testFilmQueriesUseIndexes() {
+		assertUsesIndex(FilmDbStorage.class, "FIND_BY_ID_QUERY", 1L);
+		assertUsesIndex(FilmDbStorage.class, "EXISTS_BY_ID_QUERY", 1L);
+		assertUsesIndex(FilmDbStorage.class, "FIND_PAGE_QUERY", 0L, 10);
+		assertUsesIndex(FilmDbStorage.class, "FIND_TOP_FILMS", 10);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILM_IDS_BY_GENRE", 1L, 10);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILM_IDS_BY_YEAR", FROM, TO, 10);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILM_IDS_BY_GENRE_AND_YEAR", 1L, FROM, TO, 10);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILMS_BY_DIR", 1L);
+		assertUsesIndex(FilmDbStorage.class, "FIND_LIKED_FILMS_IDS", 1L);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILM_GENRES_QUERY", 1L);
+		assertUsesIndex(FilmDbStorage.class, "FIND_FILM_DIRECTORS_QUERY", 1L);
+		assertUsesIndex(FilmDbStorage.class, "ADD_LIKE_IF_ABSENT", 1L, 1L);
+		assertUsesIndex(FilmDbStorage.class, "REMOVE_LIKE", 1L, 1L);
+		assertUsesIndex(FilmDbStorage.class, "INCREMENT_LIKES_COUNT", 1L);
+		assertNamedUsesIndex(FilmDbStorage.class, "FIND_FILMS_BY_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(FilmDbStorage.class, "FIND_EXISTING_FILM_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(FilmDbStorage.class, "FIND_GENRES_BY_FILM_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(FilmDbStorage.class, "FIND_DIRECTORS_BY_FILM_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(FilmDbStorage.class, "FIND_LIKES_BY_FILM_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+	}
+
+	@Test
+	public void testUserQueriesUseIndexes() {
+		assertUsesIndex(UserDbStorage.class, "FIND_BY_ID_QUERY", 1L);
+		assertUsesIndex(UserDbStorage.class, "EXISTS_BY_ID_QUERY", 1L);
+		assertUsesIndex(UserDbStorage.class, "FIND_PAGE_QUERY", 0L, 10);
+		assertUsesIndex(UserDbStorage.class, "FIND_ID_BY_EMAIL_QUERY", "user@email.com");
+		assertUsesIndex(UserDbStorage.class, "REMOVE_FRIEND", 1L, 2L);
+		assertNamedUsesIndex(UserDbStorage.class, "FIND_BY_IDS_QUERY", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(UserDbStorage.class, "FIND_EXISTING_IDS_QUERY", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+	}
+
+	@Test
+	public void testFeedQueriesUseIndexes() {
+		assertUsesIndex(FeedDbStorage.class, "FIND_FEED_BY_USER", 1L);
+		assertUsesIndex(FeedDbStorage.class, "FIND_FEED_PAGE_BY_USER", 1L, 0L, 10);
+		assertNamedUsesIndex(FeedDbStorage.class, "FIND_FEEDS_BY_IDS", new MapSqlParameterSource("ids", List.of(1L, 2L)));
+		assertNamedUsesIndex(FeedDbStorage.class, "FIND_LAST_FEED_IDS_BY_USERS", new MapSqlParameterSource()
+				.addValue("userIds", List.of(1L, 2L))
+				.addValue("limit", 10));
+	}
+
+	@Test
+	public void testReviewQueriesUseIndexes() {
+		assertUsesIndex(ReviewDbStorage.class, "FIND_REVIEW_BY_ID", 1L);
+		assertUsesIndex(ReviewDbStorage.class, "FIND_REVIEWS_BY_FILM", 1L, 10);
+		assertUsesIndex(ReviewDbStorage.class, "FIND_ALL_REVIEWS", 10);
+		assertUsesIndex(ReviewDbStorage.class, "LOCK_REVIEW", 1L);
+		assertUsesIndex(ReviewDbStorage.class, "FIND_VOTE", 1L, 1L);
+		assertUsesIndex(ReviewDbStorage.class, "ADD_USEFUL", 1, 1L);
+		assertUsesIndex(ReviewDbStorage.class, "DELETE_VOTE", 1L, 1L, true);
+		assertUsesIndex(ReviewDbStorage.class, "RECOUNT_USEFUL", 1L, 1L);
+	}
+
+	private void assertUsesIndex(Class<?> storage, String constant, Object... args) {
+		String plan = jdbc.queryForObject("EXPLAIN " + query(storage, constant), String.class, args);
+		assertThat(plan).as(storage.getSimpleName() + "." + constant).doesNotContainIgnoringCase("tableScan");
+	}
+
+	private void assertNamedUsesIndex(Class<?> storage, String constant, MapSqlParameterSource params) {
+		String plan = namedJdbc.queryForObject("EXPLAIN " + query(storage, constant), params, String.class);
+		assertThat(plan).as(storage.getSimpleName() + "." + constant).doesNotContainIgnoringCase("tableScan");
+	}
+
+	private String query(Class<?> storage, String constant) {
+		return (String) ReflectionTestUtils.getField(storage, constant);
+	}
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.cache.ReviewCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReviewCacheTests {
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Test
+	public void testSmallerCountIsServedFromCache() {
+		ReviewCache cache = new ReviewCache(10, 60_000);
+
+		assertThat(cache.get(1L, 5, loader(8))).hasSize(5);
+		assertThat(cache.get(1L, 3, loader(8))).extracting(Review::getReviewId).containsExactly(1L, 2L, 3L);
+		assertThat(cache.get(1L, 10, loader(8))).hasSize(8);
+		// в фильме всего 8 отзывов, больший запрос тоже обслуживается из кэша
+		assertThat(cache.get(1L, 20, loader(8))).hasSize(8);
+
+		assertThat(loads.get()).isEqualTo(2);
+		CacheStats stats = cache.getStats();
+		assertThat(stats.getHits()).isEqualTo(2);
+		assertThat(stats.getMisses()).isEqualTo(2);
+		assertThat(stats.getHitRatio()).isEqualTo(0.5);
+	}
+
+	@Test
+	public void testInvalidateAndLruEviction() {
+		ReviewCache cache = new ReviewCache(2, 60_000);
+		cache.get(1L, 10, loader(3));
+		cache.get(2L, 10, loader(3));
+		cache.get(1L, 10, loader(3));
+		cache.get(3L, 10, loader(3));
+
+		// фильм 2 читали дольше всех назад, он и вытеснен
+		cache.get(1L, 10, loader(3));
+		cache.get(2L, 10, loader(3));
+		assertThat(loads.get()).isEqualTo(4);
+
+		cache.invalidate(2L);
+		cache.get(2L, 10, loader(3));
+		assertThat(loads.get()).isEqualTo(5);
+		assertThat(cache.getStats().getSize()).isEqualTo(2);
+
+		cache.invalidateAll();
+		assertThat(cache.getStats().getSize()).isZero();
+	}
+
+	@Test
+	public void testExpiredEntryIsReloaded() {
+		ReviewCache cache = new ReviewCache(10, 0);
+		cache.get(1L, 10, loader(3));
+		cache.get(1L, 10, loader(3));
+
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testListLoadedDuringInvalidationIsNotCached() {
+		ReviewCache cache = new ReviewCache(10, 60_000);
+		cache.get(1L, 10, count -> {
+			cache.invalidate(1L);
+			return loader(3).apply(count);
+		});
+		cache.get(1L, 10, loader(3));
+
+		assertThat(loads.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testCachedReviewsAreNotSharedWithCallers() {
+		ReviewCache cache = new ReviewCache(10, 60_000);
+		cache.get(1L, 10, loader(3)).get(0).setUseful(100);
+		cache.get(1L, 10, loader(3)).get(1).setContent("Changed by reader");
+
+		List<Review> reviews = cache.get(1L, 10, loader(3));
+
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(reviews).extracting(Review::getUseful).containsExactly(0, 0, 0);
+		assertThat(reviews).extracting(Review::getContent).containsOnlyNulls();
+	}
+
+	private IntFunction<List<Review>> loader(int total) {
+		return count -> {
+			loads.incrementAndGet();
+			List<Review> reviews = new ArrayList<>();
+			LongStream.rangeClosed(1, Math.min(count, total))
+					.forEach(id -> reviews.add(Review.builder().reviewId(id).useful(0).build()));
+			return reviews;
+		};
+	}
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest(properties = "filmorate.feed.write-behind.enabled=false")
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+class ReviewDbStorageTests {
+	@Autowired
+	private ReviewDbStorage reviewStorage;
+	@Autowired
+	private FilmDbStorage filmStorage;
+	@Autowired
+	private UserDbStorage userStorage;
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	private Film film;
+	private User author;
+
+	@BeforeEach
+	public void setUp() {
+		film = filmStorage.create(Film.builder()
+				.name("Reviewed film")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		author = createUser("author");
+	}
+
+	@Test
+	public void testUsefulFollowsVotes() {
+		Review review = createReview("Review");
+		User first = createUser("first");
+		User second = createUser("second");
+
+		reviewStorage.likeOrDislikeToReview(review.getReviewId(), first.getId(), true);
+		reviewStorage.likeOrDislikeToReview(review.getReviewId(), first.getId(), true);
+		reviewStorage.likeOrDislikeToReview(review.getReviewId(), second.getId(), true);
+		assertThat(useful(review)).isEqualTo(2);
+
+		reviewStorage.likeOrDislikeToReview(review.getReviewId(), second.getId(), false);
+		assertThat(useful(review)).isEqualTo(0);
+
+		reviewStorage.deleteLikeOrDislike(review.getReviewId(), second.getId(), true);
+		assertThat(useful(review)).isEqualTo(0);
+
+		reviewStorage.deleteLikeOrDislike(review.getReviewId(), second.getId(), false);
+		assertThat(useful(review)).isEqualTo(1);
+	}
+
+	@Test
+	public void testRecountRepairsUseful() {
+		Review review = createReview("Review");
+		User voter = createUser("voter");
+		reviewStorage.likeOrDislikeToReview(review.getReviewId(), voter.getId(), false);
+		jdbc.update("UPDATE reviews SET useful = 10 WHERE review_id = ?", review.getReviewId());
+
+		reviewStorage.recountUseful(review.getReviewId());
+
+		assertThat(useful(review)).isEqualTo(-1);
+	}
+
+	@Test
+	public void testReviewsAreOrderedByUseful() {
+		Review plain = createReview("Plain");
+		Review liked = createReview("Liked");
+		Review disliked = createReview("Disliked");
+		User voter = createUser("voter");
+
+		reviewStorage.likeOrDislikeToReview(liked.getReviewId(), voter.getId(), true);
+		reviewStorage.likeOrDislikeToReview(disliked.getReviewId(), voter.getId(), false);
+
+		assertThat(reviewStorage.getReviewByFilm(film.getId(), 10))
+				.extracting(Review::getReviewId)
+				.containsExactly(liked.getReviewId(), plain.getReviewId(), disliked.getReviewId());
+		assertThat(reviewStorage.getReviewByFilm(film.getId(), 1))
+				.extracting(Review::getUseful)
+				.containsExactly(1);
+	}
+
+	private int useful(Review review) {
+		return reviewStorage.getReviewById(review.getReviewId()).orElseThrow().getUseful();
+	}
+
+	private Review createReview(String content) {
+		return reviewStorage.addReview(Review.builder()
+				.content(content)
+				.isPositive(true)
+				.filmId(film.getId())
+				.userId(author.getId())
+				.build());
+	}
+
+	private User createUser(String login) {
+		return userStorage.create(User.builder()
+				.name(login)
+				.email(login + System.nanoTime() + "@email.com")
+				.login(login)
+				.birthday(LocalDate.parse("2001-10-05"))
+				.friends(new HashSet<>())
+				.build());
+	}
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Оценки отправляются из нескольких потоков, поэтому тест работает без общей транзакции
+ * и сам удаляет созданные данные.
+ */
+@JdbcTest(properties = "filmorate.feed.write-behind.enabled=false")
+@AutoConfigureTestDatabase
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@ComponentScan("ru.yandex.practicum.filmorate")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReviewVotesConcurrencyTests {
+	private static final int USERS = 100;
+	private static final int VOTES_PER_USER = 20;
+	private static final int THREADS = 8;
+
+	@Autowired
+	private ReviewService reviewService;
+	@Autowired
+	private FilmDbStorage filmStorage;
+	@Autowired
+	private UserDbStorage userStorage;
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	private Film film;
+	private Review review;
+	private final List<User> users = new ArrayList<>();
+
+	@AfterEach
+	public void cleanUp() {
+		if (review != null) {
+			reviewService.deleteReview(review.getReviewId());
+		}
+		users.forEach(user -> userStorage.deleteUser(user.getId()));
+		if (film != null) {
+			filmStorage.deleteFilm(film.getId());
+		}
+	}
+
+	@Test
+	public void testParallelVotesKeepExactUseful() throws Exception {
+		film = filmStorage.create(Film.builder()
+				.name("Voted film")
+				.description("FilmDescr")
+				.releaseDate(LocalDate.parse("2001-10-05"))
+				.duration(100)
+				.mpa(Mpa.builder().id(1L).build())
+				.likes(new HashSet<>())
+				.build());
+		for (int i = 0; i <= USERS; i++) {
+			users.add(userStorage.create(User.builder()
+					.name("Voter")
+					.email("voter" + i + "_" + System.nanoTime() + "@email.com")
+					.login("Voter")
+					.birthday(LocalDate.parse("2001-10-05"))
+					.friends(new HashSet<>())
+					.build()));
+		}
+		review = reviewService.addReview(Review.builder()
+				.content("Contested review")
+				.isPositive(true)
+				.filmId(film.getId())
+				.userId(users.get(USERS).getId())
+				.build());
+
+		// каждый пользователь чередует лайк и дизлайк: нечетные заканчивают лайком, четные дизлайком,
+		// каждый четвертый затем снимает дизлайк — итог 50 лайков и 25 дизлайков
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		List<Future<?>> tasks = new ArrayList<>();
+		try {
+			for (int i = 0; i < USERS; i++) {
+				int index = i;
+				Long userId = users.get(i).getId();
+				tasks.add(executor.submit(() -> {
+					for (int vote = 0; vote < VOTES_PER_USER; vote++) {
+						if ((vote + index) % 2 == 0) {
+							reviewService.likeToReview(review.getReviewId(), userId);
+						} else {
+							reviewService.dislikeToReview(review.getReviewId(), userId);
+						}
+					}
+					if (index % 4 == 0) {
+						reviewService.deleteDislike(review.getReviewId(), userId);
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(reviewService.getReviewById(review.getReviewId()).getUseful()).isEqualTo(25);
+		assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM useful WHERE review_id = ?",
+				Integer.class, review.getReviewId())).isEqualTo(75);
+	}
+}
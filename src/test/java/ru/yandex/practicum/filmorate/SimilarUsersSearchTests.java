@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.service.recommendation.Neighbour;
+import ru.yandex.practicum.filmorate.service.recommendation.SimilarUsersSearch;
+import ru.yandex.practicum.filmorate.service.recommendation.SimilarityMetric;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarUsersSearchTests {
+
+	@Test
+	public void testMetrics() {
+		assertThat(SimilarityMetric.OVERLAP.score(2, 4, 3)).isEqualTo(2);
+		assertThat(SimilarityMetric.JACCARD.score(2, 4, 3)).isEqualTo(0.4);
+		assertThat(SimilarityMetric.COSINE.score(2, 4, 4)).isEqualTo(0.5);
+		assertThat(SimilarityMetric.JACCARD.score(0, 0, 0)).isEqualTo(0);
+	}
+
+	@Test
+	public void testFindNearestReturnsTopKOrdered() {
+		Map<Long, long[]> likes = new HashMap<>();
+		likes.put(1L, new long[]{1, 2, 3, 4});
+		likes.put(2L, new long[]{1, 2, 3, 5});
+		likes.put(3L, new long[]{1, 6});
+		likes.put(4L, new long[]{1, 2, 7});
+		likes.put(5L, new long[]{8, 9});
+
+		List<Neighbour> nearest = new SimilarUsersSearch(1).findNearest(1L, likes, SimilarityMetric.OVERLAP, 2);
+
+		assertThat(nearest).extracting(Neighbour::getUserId).containsExactly(2L, 4L);
+		assertThat(nearest).extracting(Neighbour::getScore).containsExactly(3.0, 2.0);
+	}
+
+	@Test
+	public void testJaccardPrefersSmallerSimilarSets() {
+		Map<Long, long[]> likes = new HashMap<>();
+		likes.put(1L, new long[]{1, 2});
+		likes.put(2L, new long[]{1, 2, 3, 4, 5, 6});
+		likes.put(3L, new long[]{1, 2, 3});
+
+		List<Neighbour> nearest = new SimilarUsersSearch(16).findNearest(1L, likes, SimilarityMetric.JACCARD, 1);
+
+		assertThat(nearest).extracting(Neighbour::getUserId).containsExactly(3L);
+	}
+
+	@Test
+	public void testParallelSearchMatchesSequential() {
+		Random random = new Random(42);
+		Map<Long, long[]> likes = new HashMap<>();
+		for (long userId = 1; userId <= 20_000; userId++) {
+			likes.put(userId, LongStream.generate(() -> random.nextInt(500))
+					.limit(20)
+					.distinct()
+					.sorted()
+					.toArray());
+		}
+
+		for (SimilarityMetric metric : SimilarityMetric.values()) {
+			List<Neighbour> sequential = new SimilarUsersSearch(Integer.MAX_VALUE)
+					.findNearest(7L, likes, metric, 10);
+			List<Neighbour> parallel = new SimilarUsersSearch(256)
+					.findNearest(7L, likes, metric, 10);
+
+			assertThat(parallel).hasSize(10);
+			assertThat(parallel).extracting(Neighbour::getUserId)
+					.containsExactlyElementsOf(sequential.stream().map(Neighbour::getUserId).toList());
+		}
+	}
+}